@@ -0,0 +1,46 @@
+package com.smart.cache;
+
+/**
+ * BloomConfig
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 布隆过滤器配置.适用于key范围已知的缓存(如用户ID),远程读取前判断key是否确定未写入,以省去一次Redis往返.
+ *
+ * @author YRain
+ */
+public class BloomConfig {
+
+    // 预计写入key数量,超出后误判率上升
+    private long   expectedInsertions = 1000000;
+    // 误判率
+    private double fpp                = 0.01;
+
+    public BloomConfig() {
+    }
+
+    public BloomConfig(long expectedInsertions, double fpp) {
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public void setExpectedInsertions(long expectedInsertions) {
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public double getFpp() {
+        return fpp;
+    }
+
+    public void setFpp(double fpp) {
+        this.fpp = fpp;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomConfig [expectedInsertions=" + expectedInsertions + ", fpp=" + fpp + "]";
+    }
+
+}
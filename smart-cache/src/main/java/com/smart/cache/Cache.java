@@ -10,8 +10,18 @@ public abstract class Cache {
 
     static String ID;
     static String HOST;
+    // 节点号,启动时由Redis递增分配,用于二进制同步命令
+    static long NODE;
     static String CACHE_STORE;
     static String CACHE_STORE_SYNC;
+    static String CACHE_INDEX;
+    static String CACHE_GENERATION;
+    static String CACHE_EPOCH;
+    static String CACHE_LEASE;
+    static String CACHE_BLOOM;
+    static String CACHE_NODE;
+    static String CACHE_STREAM;
+    static String CACHE_VERSION;
 
     private Cache() {
     }
@@ -0,0 +1,122 @@
+package com.smart.cache;
+
+import java.nio.charset.Charset;
+
+import com.smart.util.Utils;
+
+/**
+ * CacheBloom
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 缓存名称的布隆过滤器本地快照.位图与Redis BITMAP一致(SETBIT偏移,高位在前),由murmurhash2_64双重哈希得到各位偏移.
+ * mightContain为false时,key确定未写入过远程缓存.
+ *
+ * @author YRain
+ */
+public class CacheBloom {
+
+    private static final Charset UTF_8    = Charset.forName("UTF-8");
+    // Redis位图最大长度
+    private static final long    MAX_BITS = 1L << 32;
+
+    private final long           numBits;
+    private final int            numHashFunctions;
+    private volatile byte[]      bits;
+
+    public CacheBloom(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, Math.min(m, MAX_BITS));
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) this.numBits / n * Math.log(2)));
+        this.bits = new byte[0];
+    }
+
+    /**
+     * key对应的位偏移
+     */
+    public long[] offsets(String key) {
+        byte[] bytes = key.getBytes(UTF_8);
+        long hash = Utils.murmurhash2_64(bytes, bytes.length, 0xe17a1465);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long[] offsets = new long[this.numHashFunctions];
+        for (int i = 0; i < this.numHashFunctions; i++) {
+            long combined = (hash1 + (long) (i + 1) * hash2) & 0xffffffffL;
+            offsets[i] = combined % this.numBits;
+        }
+        return offsets;
+    }
+
+    /**
+     * key是否可能已写入
+     */
+    public boolean mightContain(String key) {
+        byte[] bits = this.bits;
+        for (long offset : this.offsets(key)) {
+            int index = (int) (offset >>> 3);
+            if (index >= bits.length || (bits[index] & (0x80 >>> (offset & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 本地记录key
+     */
+    public synchronized void put(String key) {
+        long[] offsets = this.offsets(key);
+        byte[] bits = this.ensure(offsets);
+        for (long offset : offsets) {
+            bits[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+        }
+    }
+
+    /**
+     * 以Redis位图替换本地快照,并保留本地已记录的位
+     */
+    public synchronized void merge(byte[] remote) {
+        byte[] local = this.bits;
+        byte[] merged = new byte[Math.max(local.length, remote == null ? 0 : remote.length)];
+        if (remote != null) {
+            System.arraycopy(remote, 0, merged, 0, remote.length);
+        }
+        for (int i = 0; i < local.length; i++) {
+            merged[i] |= local[i];
+        }
+        this.bits = merged;
+    }
+
+    /**
+     * 以指定位图替换本地快照
+     */
+    public synchronized void reset(byte[] bits) {
+        this.bits = bits == null ? new byte[0] : bits;
+    }
+
+    public byte[] getBits() {
+        return bits;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+
+    private byte[] ensure(long[] offsets) {
+        long max = 0;
+        for (long offset : offsets) {
+            max = Math.max(max, offset);
+        }
+        int length = (int) (max >>> 3) + 1;
+        if (this.bits.length < length) {
+            byte[] bits = new byte[length];
+            System.arraycopy(this.bits, 0, bits, 0, this.bits.length);
+            this.bits = bits;
+        }
+        return this.bits;
+    }
+
+}
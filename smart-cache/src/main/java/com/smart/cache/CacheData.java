@@ -47,6 +47,11 @@ public class CacheData implements Serializable {
      */
     private Level             level;
 
+    /**
+     * 缓存版本号
+     */
+    private long              version;
+
     public CacheData() {
     }
 
@@ -117,9 +122,17 @@ public class CacheData implements Serializable {
         this.level = level;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
-        return "CacheData [id=" + id + ", host=" + host + ", name=" + name + ", key=" + key + ", value=" + value + ", ttl=" + ttl + ", level=" + level + "]";
+        return "CacheData [id=" + id + ", host=" + host + ", name=" + name + ", key=" + key + ", value=" + value + ", ttl=" + ttl + ", level=" + level + ", version=" + version + "]";
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.smart.cache;
+
+import com.smart.util.Utils;
+
+/**
+ * CacheEnvelope
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * Redis中缓存值的封装格式,在序列化后的缓存值前附加版本号与绝对过期时间,读取时一次GET即可得到剩余TTL.
+ * [0-1] 魔数 | [2-9] 版本号 | [10-17] 过期时间戳(毫秒,0为永久) | [18-] 缓存值
+ *
+ * @author YRain
+ */
+public class CacheEnvelope {
+
+    public static final byte   MAGIC_0       = (byte) 0xCA;
+    public static final byte   MAGIC_1       = (byte) 0xE1;
+    public static final int    HEADER_LENGTH = 18;
+    // 计数版本号的起始值,大于等于该值的版本号由Redis按缓存名称递增生成,可比较先后;小于该值的为写入时间戳
+    public static final long   VERSION_BASE  = 1L << 52;
+
+    private final long         version;
+    private final long         expireAt;
+    private final byte[]       payload;
+
+    private CacheEnvelope(long version, long expireAt, byte[] payload) {
+        this.version = version;
+        this.expireAt = expireAt;
+        this.payload = payload;
+    }
+
+    /**
+     * 封装缓存值
+     */
+    public static byte[] encode(byte[] payload, long version, long expireAt) {
+        if (null == payload) {
+            return null;
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC_0;
+        bytes[1] = MAGIC_1;
+        Utils.putLong(bytes, 2, version);
+        Utils.putLong(bytes, 10, expireAt);
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    /**
+     * 是否为封装格式
+     */
+    public static boolean isEnvelope(byte[] bytes) {
+        return null != bytes && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    /**
+     * 解析封装格式,非封装格式返回null
+     */
+    public static CacheEnvelope decode(byte[] bytes) {
+        if (!isEnvelope(bytes)) {
+            return null;
+        }
+        byte[] payload = new byte[bytes.length - HEADER_LENGTH];
+        System.arraycopy(bytes, HEADER_LENGTH, payload, 0, payload.length);
+        return new CacheEnvelope(getLong(bytes, 2), getLong(bytes, 10), payload);
+    }
+
+    /**
+     * 根据ttl(秒)计算过期时间戳,0为永久
+     */
+    public static long expireAt(int ttl) {
+        return ttl > 0 ? System.currentTimeMillis() + ttl * 1000L : 0;
+    }
+
+    /**
+     * 剩余时间.单位为秒
+     * 0,永久
+     * -1,已过期(不足1秒按已过期处理)
+     */
+    public int ttl() {
+        if (this.expireAt == 0) {
+            return 0;
+        }
+        long remain = (this.expireAt - System.currentTimeMillis()) / 1000;
+        return remain > 0 ? (int) remain : -1;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long val = 0;
+        for (int i = 0; i < 8; i++) {
+            val = (val << 8) | (b[off + i] & 0xff);
+        }
+        return val;
+    }
+
+}
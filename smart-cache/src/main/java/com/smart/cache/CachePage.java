@@ -0,0 +1,62 @@
+package com.smart.cache;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * CachePage
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 游标分页结果.以cursor继续获取下一页,cursor为"0"时已遍历完成.
+ * 基于HSCAN/ZSCAN,每页数量仅为建议值,遍历期间被修改的key可能重复返回或不返回.
+ *
+ * @author YRain
+ */
+public class CachePage<E> implements Serializable {
+
+    private static final long  serialVersionUID = -3408720475562231917L;
+
+    // 首页游标
+    public static final String FIRST            = "0";
+
+    // 下一页游标
+    private String             cursor;
+    // 当前页数据
+    private List<E>            items;
+
+    public CachePage() {
+    }
+
+    public CachePage(String cursor, List<E> items) {
+        this.cursor = cursor;
+        this.items = items;
+    }
+
+    /**
+     * 是否已遍历完成
+     */
+    public boolean isFinished() {
+        return FIRST.equals(cursor);
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public List<E> getItems() {
+        return items;
+    }
+
+    public void setItems(List<E> items) {
+        this.items = items;
+    }
+
+    @Override
+    public String toString() {
+        return "CachePage [cursor=" + cursor + ", items=" + items + "]";
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.smart.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CachePurge
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * rem/cls的后台删除进度.索引先重命名为快照,再由后台线程分批删除快照中的缓存值.
+ *
+ * @author YRain
+ */
+public class CachePurge {
+
+    // 缓存名称
+    private final String     name;
+    // 索引快照Key
+    private final String     key;
+    // 快照中Key数量
+    private final long       total;
+    // 已删除数量
+    private final AtomicLong deleted = new AtomicLong();
+    // 开始时间
+    private final long       startTime;
+    // 结束时间,0为未结束
+    private volatile long    endTime;
+    // 失败原因
+    private volatile String  error;
+
+    public CachePurge(String name, String key, long total) {
+        this.name = name;
+        this.key = key;
+        this.total = total;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    void recordDeleted(long count) {
+        this.deleted.addAndGet(count);
+    }
+
+    void finish(String error) {
+        this.error = error;
+        this.endTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 是否已结束
+     */
+    public boolean isFinished() {
+        return endTime > 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "CachePurge [name=" + name + ", key=" + key + ", total=" + total + ", deleted=" + deleted + ", startTime=" + startTime + ", endTime=" + endTime + ", error=" + error + "]";
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.smart.cache;
+
+/**
+ * CacheScripts
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 缓存使用的Lua脚本.写入脚本ARGV[1],ARGV[2]固定为同步频道与同步命令,频道为空时不发布.
+ * 索引类型为'z'时smart:cache:index:user为有序集合,ARGV[6]为过期时间戳分值,否则smart:cache:store:user为Hash,ARGV[6]为ttl.
+ * 写入脚本ARGV最后一个为'epoch'时,KEYS最后一个为失效纪元smart:cache:epoch:user,写入后递增.
+ * 写入脚本ARGV中'epoch'前(或最后一个)为'version'时,对应KEYS为版本计数smart:cache:version:user,写入时递增生成版本号.
+ *
+ * @author YRain
+ */
+public abstract class CacheScripts {
+
+    private CacheScripts() {
+    }
+
+    /**
+     * 写入索引,ARGV[8]为索引类型
+     */
+    private static final String INDEX_ADD       = "" //
+            + "if ARGV[8] == 'z' then redis.call('ZADD', KEYS[2], ARGV[6], ARGV[3]) else redis.call('HSET', KEYS[2], ARGV[3], ARGV[6]) end\n";
+
+    /**
+     * 递增失效纪元,并返回除纪元外的KEYS数量
+     */
+    private static final String EPOCH           = "" //
+            + "local n = #KEYS\n" //
+            + "if ARGV[#ARGV] == 'epoch' then\n" //
+            + "  redis.call('INCR', KEYS[n])\n" //
+            + "  n = n - 1\n" //
+            + "end\n";
+
+    /**
+     * 递增版本计数生成版本号(VERSION_BASE + 计数,8字节大端),追加至同步命令末尾,并返回除版本与纪元外的KEYS数量
+     */
+    private static final String VERSION         = "" //
+            + "local ver = nil\n" //
+            + "local a = #ARGV\n" //
+            + "if ARGV[a] == 'epoch' then a = a - 1 end\n" //
+            + "if ARGV[a] == 'version' then\n" //
+            + "  local v = 4503599627370496 + redis.call('INCR', KEYS[n])\n" //
+            + "  n = n - 1\n" //
+            + "  local b = {}\n" //
+            + "  for i = 8, 1, -1 do\n" //
+            + "    b[i] = v % 256\n" //
+            + "    v = math.floor(v / 256)\n" //
+            + "  end\n" //
+            + "  ver = string.char(unpack(b))\n" //
+            + "  if ARGV[2] ~= '' then ARGV[2] = ARGV[2] .. ver end\n" //
+            + "end\n";
+
+    /**
+     * 写入脚本共用的写值,索引维护,纪元与版本递增及发布部分.生成版本号时替换封装格式中的版本号
+     */
+    private static final String WRITE           = "" //
+            + EPOCH //
+            + VERSION //
+            + "if ver and string.len(ARGV[4]) >= 18 and string.sub(ARGV[4], 1, 2) == '\\202\\225' then\n" //
+            + "  ARGV[4] = string.sub(ARGV[4], 1, 2) .. ver .. string.sub(ARGV[4], 11)\n" //
+            + "end\n" //
+            + "if tonumber(ARGV[5]) > 0 then\n" //
+            + "  redis.call('SETEX', KEYS[1], ARGV[5], ARGV[4])\n" //
+            + "else\n" //
+            + "  redis.call('SET', KEYS[1], ARGV[4])\n" //
+            + "end\n" //
+            + "if n > 1 then\n" //
+            + "  " + INDEX_ADD //
+            + "end\n" //
+            + "if n > 2 then\n" //
+            + "  redis.call('SADD', KEYS[3], ARGV[7])\n" //
+            + "end\n" //
+            + "if ARGV[1] ~= '' then\n" //
+            + "  redis.call('PUBLISH', ARGV[1], ARGV[2])\n" //
+            + "end\n";
+
+    /**
+     * 设置缓存值,维护索引并发布同步命令
+     * KEYS: element, cache, [store], [version], [epoch]
+     * ARGV: channel, command, field, value, ttl, ttlValue, storeName, indexType, ['version'], ['epoch']
+     */
+    public static final String SET             = "" //
+            + WRITE //
+            + "return 1";
+
+    /**
+     * 删除缓存值,维护索引并发布同步命令
+     * KEYS: element, cache, [version], [epoch]
+     * ARGV: channel, command, field, indexType, ['version'], ['epoch']
+     */
+    public static final String DEL             = "" //
+            + EPOCH //
+            + VERSION //
+            + "redis.call('DEL', KEYS[1])\n" //
+            + "if ARGV[4] == 'z' then redis.call('ZREM', KEYS[2], ARGV[3]) else redis.call('HDEL', KEYS[2], ARGV[3]) end\n" //
+            + "if ARGV[1] ~= '' then\n" //
+            + "  redis.call('PUBLISH', ARGV[1], ARGV[2])\n" //
+            + "end\n" //
+            + "return 1";
+
+    /**
+     * 不存在(或为空值标记)时设置缓存值,维护索引并发布同步命令.存在时返回原值,设置成功返回nil
+     * KEYS: element, [cache], [store], [version], [epoch]
+     * ARGV: channel, command, field, value, ttl, ttlValue, storeName, indexType, tombstone, envelopeMagic, ['version'], ['epoch']
+     */
+    public static final String SET_IF_ABSENT   = "" //
+            + "local existing = redis.call('GET', KEYS[1])\n" //
+            + "if existing and existing ~= ARGV[9] and not (string.sub(existing, 1, 2) == ARGV[10] and string.sub(existing, 19) == ARGV[9]) then\n" //
+            + "  return existing\n" //
+            + "end\n" //
+            + WRITE //
+            + "return false";
+
+    /**
+     * 版本号一致时设置缓存值,维护索引并发布同步命令.成功返回1,否则返回0
+     * 版本号为封装格式第3-10字节,不存在或未封装时为8个0字节
+     * KEYS: element, [cache], [store], [version], [epoch]
+     * ARGV: channel, command, field, value, ttl, ttlValue, storeName, indexType, expectedVersion, envelopeMagic, ['version'], ['epoch']
+     */
+    public static final String COMPARE_AND_SET = "" //
+            + "local existing = redis.call('GET', KEYS[1])\n" //
+            + "local version = string.rep('\\0', 8)\n" //
+            + "if existing and string.len(existing) >= 18 and string.sub(existing, 1, 2) == ARGV[10] then\n" //
+            + "  version = string.sub(existing, 3, 10)\n" //
+            + "end\n" //
+            + "if version ~= ARGV[9] then\n" //
+            + "  return 0\n" //
+            + "end\n" //
+            + WRITE //
+            + "return 1";
+
+    /**
+     * 设置缓存值,维护索引并发布同步命令,返回原值
+     * KEYS: element, [cache], [store], [version], [epoch]
+     * ARGV: channel, command, field, value, ttl, ttlValue, storeName, indexType, ['version'], ['epoch']
+     */
+    public static final String GET_AND_SET     = "" //
+            + "local existing = redis.call('GET', KEYS[1])\n" //
+            + WRITE //
+            + "return existing";
+
+    /**
+     * 布隆过滤器批量置位
+     * KEYS: bloom
+     * ARGV: offset...
+     */
+    public static final String BLOOM_ADD       = "" //
+            + "for i = 1, #ARGV do\n" //
+            + "  redis.call('SETBIT', KEYS[1], ARGV[i], 1)\n" //
+            + "end\n" //
+            + "return #ARGV";
+
+    /**
+     * 布隆过滤器批量检查,每个key的位均已置位时为1,否则为0
+     * KEYS: bloom
+     * ARGV: hashes, offset...
+     */
+    public static final String BLOOM_TEST      = "" //
+            + "local k = tonumber(ARGV[1])\n" //
+            + "local result = {}\n" //
+            + "for i = 2, #ARGV, k do\n" //
+            + "  local found = 1\n" //
+            + "  for j = i, i + k - 1 do\n" //
+            + "    if redis.call('GETBIT', KEYS[1], ARGV[j]) == 0 then\n" //
+            + "      found = 0\n" //
+            + "      break\n" //
+            + "    end\n" //
+            + "  end\n" //
+            + "  result[#result + 1] = found\n" //
+            + "end\n" //
+            + "return result";
+
+    /**
+     * 将Hash索引迁移至有序集合索引,有序集合中已存在的成员(迁移期间新写入)保留原分值
+     * KEYS: sortedIndex
+     * ARGV: score, member, score, member...
+     */
+    public static final String MIGRATE_INDEX   = "" //
+            + "local added = 0\n" //
+            + "for i = 1, #ARGV, 2 do\n" //
+            + "  if not redis.call('ZSCORE', KEYS[1], ARGV[i + 1]) then\n" //
+            + "    added = added + redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])\n" //
+            + "  end\n" //
+            + "end\n" //
+            + "return added";
+
+    /**
+     * 索引存在时重命名为快照并设置过期时间,返回是否重命名
+     * KEYS: index, snapshot
+     * ARGV: seconds
+     */
+    public static final String RENAME_INDEX    = "" //
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then\n" //
+            + "  return 0\n" //
+            + "end\n" //
+            + "redis.call('RENAME', KEYS[1], KEYS[2])\n" //
+            + "redis.call('EXPIRE', KEYS[2], ARGV[1])\n" //
+            + "return 1";
+
+    /**
+     * 删除一批缓存值并从快照中移除对应成员.成员已重新写入索引(rem后新写入)时保留其缓存值.支持UNLINK(Redis 4.0+)时后台释放内存,否则DEL
+     * KEYS: snapshot, index, element...
+     * ARGV: indexType, member...
+     */
+    public static final String PURGE           = "" //
+            + "local keys = {}\n" //
+            + "local members = {}\n" //
+            + "for i = 3, #KEYS do\n" //
+            + "  local member = ARGV[i - 1]\n" //
+            + "  local live\n" //
+            + "  if ARGV[1] == 'z' then live = redis.call('ZSCORE', KEYS[2], member) else live = redis.call('HEXISTS', KEYS[2], member) == 1 end\n" //
+            + "  if not live then\n" //
+            + "    keys[#keys + 1] = KEYS[i]\n" //
+            + "  end\n" //
+            + "  members[#members + 1] = member\n" //
+            + "end\n" //
+            + "if #keys > 0 and not pcall(redis.call, 'UNLINK', unpack(keys)) then\n" //
+            + "  redis.call('DEL', unpack(keys))\n" //
+            + "end\n" //
+            + "if #members > 0 then\n" //
+            + "  if ARGV[1] == 'z' then redis.call('ZREM', KEYS[1], unpack(members)) else redis.call('HDEL', KEYS[1], unpack(members)) end\n" //
+            + "end\n" //
+            + "return #keys";
+
+    /**
+     * 释放加载租约,仅当租约仍由本节点持有时删除
+     * KEYS: lease
+     * ARGV: token
+     */
+    public static final String RELEASE_LEASE   = "" //
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" //
+            + "  return redis.call('DEL', KEYS[1])\n" //
+            + "end\n" //
+            + "return 0";
+
+    /**
+     * 写入同步命令流,按近似长度裁剪(Redis 5.0+).id由Redis生成,以命令方式复制
+     * KEYS: stream
+     * ARGV: maxLength, command
+     */
+    public static final String STREAM_ADD      = "" //
+            + "redis.replicate_commands()\n" //
+            + "return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', 'c', ARGV[2])";
+
+    /**
+     * 读取同步命令流中lastId之后的命令,返回{最早id, id, command, id, command...},流不存在时返回空.
+     * lastId为空时仅返回{最早id, 最新id}作为起始位置
+     * KEYS: stream
+     * ARGV: lastId, count
+     */
+    public static final String STREAM_READ     = "" //
+            + "local first = redis.call('XRANGE', KEYS[1], '-', '+', 'COUNT', 1)\n" //
+            + "if #first == 0 then\n" //
+            + "  return {}\n" //
+            + "end\n" //
+            + "local result = {first[1][1]}\n" //
+            + "if ARGV[1] == '' then\n" //
+            + "  result[2] = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)[1][1]\n" //
+            + "  return result\n" //
+            + "end\n" //
+            + "for _, entry in ipairs(redis.call('XRANGE', KEYS[1], ARGV[1], '+', 'COUNT', tonumber(ARGV[2]) + 1)) do\n" //
+            + "  if entry[1] ~= ARGV[1] then\n" //
+            + "    result[#result + 1] = entry[1]\n" //
+            + "    result[#result + 1] = entry[2][2]\n" //
+            + "  end\n" //
+            + "end\n" //
+            + "return result";
+
+}
@@ -0,0 +1,254 @@
+package com.smart.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CacheStats
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 缓存统计.当前JVM内的计数,重启后清零.
+ *
+ * @author YRain
+ */
+public class CacheStats {
+
+    public static final String SYNC_CONNECTED    = "connected";
+    public static final String SYNC_LAGGING      = "lagging";
+    public static final String SYNC_DISCONNECTED = "disconnected";
+
+    // 实际执行的加载次数
+    private final AtomicLong loads            = new AtomicLong();
+    // 加载失败次数
+    private final AtomicLong loadFailures     = new AtomicLong();
+    // 加载累计耗时(毫秒)
+    private final AtomicLong loadMillis       = new AtomicLong();
+    // 被合并的加载次数,即等待其他线程加载结果的次数
+    private final AtomicLong loadCoalesced    = new AtomicLong();
+    // 获得加载租约次数
+    private final AtomicLong leaseAcquired    = new AtomicLong();
+    // 未获得租约而等待其他节点加载的次数
+    private final AtomicLong leaseWaits       = new AtomicLong();
+    // 未获得租约而返回旧值的次数
+    private final AtomicLong staleServed      = new AtomicLong();
+    // 提前刷新次数
+    private final AtomicLong refreshes        = new AtomicLong();
+    // 空值标记写入次数
+    private final AtomicLong tombstoneSets    = new AtomicLong();
+    // 空值标记命中次数
+    private final AtomicLong tombstoneHits    = new AtomicLong();
+    // 布隆过滤器判定不存在而跳过远程读取的次数
+    private final AtomicLong bloomSkips       = new AtomicLong();
+    // 远程读取命中后准入本地缓存的次数
+    private final AtomicLong admissions       = new AtomicLong();
+    // 远程读取命中后因频率不足未写入本地缓存的次数
+    private final AtomicLong admissionRejects = new AtomicLong();
+    // 已接收未执行完成的同步命令数量
+    private final AtomicLong syncPending      = new AtomicLong();
+    // 执行完成的同步命令数量
+    private final AtomicLong syncHandled      = new AtomicLong();
+    // 同步命令从接收至执行完成的累计耗时(纳秒)
+    private final AtomicLong syncNanos        = new AtomicLong();
+    // 同步命令执行队列已满的次数
+    private final AtomicLong syncOverflows    = new AtomicLong();
+    // 版本号不新于本地缓存而跳过的同步命令数量
+    private final AtomicLong syncSkips        = new AtomicLong();
+    // 同步订阅断开后重连成功的次数
+    private final AtomicLong syncReconnects   = new AtomicLong();
+    // 重连后因纪元变化(或无法比较)删除本地缓存的名称数量,清空全部本地缓存时计1
+    private final AtomicLong syncResyncs      = new AtomicLong();
+    // 最近一次心跳从发布至接收的耗时(毫秒),心跳未返回时为已等待的时间
+    private final AtomicLong syncLagMillis    = new AtomicLong();
+    // 同步订阅状态:connected,lagging,disconnected
+    private volatile String  syncState        = SYNC_DISCONNECTED;
+
+    void recordLoad(long millis) {
+        this.loads.incrementAndGet();
+        this.loadMillis.addAndGet(millis);
+    }
+
+    void recordLoadFailure(long millis) {
+        this.loadFailures.incrementAndGet();
+        this.loadMillis.addAndGet(millis);
+    }
+
+    void recordLoadCoalesced() {
+        this.loadCoalesced.incrementAndGet();
+    }
+
+    void recordLeaseAcquired() {
+        this.leaseAcquired.incrementAndGet();
+    }
+
+    void recordLeaseWait() {
+        this.leaseWaits.incrementAndGet();
+    }
+
+    void recordStaleServed() {
+        this.staleServed.incrementAndGet();
+    }
+
+    void recordRefresh() {
+        this.refreshes.incrementAndGet();
+    }
+
+    void recordTombstoneSet() {
+        this.tombstoneSets.incrementAndGet();
+    }
+
+    void recordTombstoneHit() {
+        this.tombstoneHits.incrementAndGet();
+    }
+
+    void recordBloomSkip() {
+        this.bloomSkips.incrementAndGet();
+    }
+
+    void recordAdmission() {
+        this.admissions.incrementAndGet();
+    }
+
+    void recordAdmissionReject() {
+        this.admissionRejects.incrementAndGet();
+    }
+
+    void recordSyncQueued() {
+        this.syncPending.incrementAndGet();
+    }
+
+    void recordSyncHandled(long nanos) {
+        this.syncPending.decrementAndGet();
+        this.syncHandled.incrementAndGet();
+        this.syncNanos.addAndGet(nanos);
+    }
+
+    void recordSyncOverflow() {
+        this.syncOverflows.incrementAndGet();
+    }
+
+    void recordSyncSkip() {
+        this.syncSkips.incrementAndGet();
+    }
+
+    void recordSyncReconnect() {
+        this.syncReconnects.incrementAndGet();
+    }
+
+    void recordSyncResync(int names) {
+        this.syncResyncs.addAndGet(names);
+    }
+
+    void recordSyncState(String state, long lagMillis) {
+        this.syncState = state;
+        this.syncLagMillis.set(lagMillis);
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    public long getLoadMillis() {
+        return loadMillis.get();
+    }
+
+    public long getLoadCoalesced() {
+        return loadCoalesced.get();
+    }
+
+    public long getLeaseAcquired() {
+        return leaseAcquired.get();
+    }
+
+    public long getLeaseWaits() {
+        return leaseWaits.get();
+    }
+
+    public long getStaleServed() {
+        return staleServed.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getTombstoneSets() {
+        return tombstoneSets.get();
+    }
+
+    public long getTombstoneHits() {
+        return tombstoneHits.get();
+    }
+
+    public long getBloomSkips() {
+        return bloomSkips.get();
+    }
+
+    public long getAdmissions() {
+        return admissions.get();
+    }
+
+    public long getAdmissionRejects() {
+        return admissionRejects.get();
+    }
+
+    public long getSyncPending() {
+        return syncPending.get();
+    }
+
+    public long getSyncHandled() {
+        return syncHandled.get();
+    }
+
+    public long getSyncNanos() {
+        return syncNanos.get();
+    }
+
+    public long getSyncOverflows() {
+        return syncOverflows.get();
+    }
+
+    public long getSyncSkips() {
+        return syncSkips.get();
+    }
+
+    public long getSyncReconnects() {
+        return syncReconnects.get();
+    }
+
+    public long getSyncResyncs() {
+        return syncResyncs.get();
+    }
+
+    public long getSyncLagMillis() {
+        return syncLagMillis.get();
+    }
+
+    public String getSyncState() {
+        return syncState;
+    }
+
+    /**
+     * 同步命令从接收至执行完成的平均耗时(毫秒)
+     */
+    public double getSyncAverageMillis() {
+        long handled = this.syncHandled.get();
+        return handled == 0 ? 0 : this.syncNanos.get() / 1000000.0 / handled;
+    }
+
+    /**
+     * 准入率,未启用准入频率时为1
+     */
+    public double getAdmissionRate() {
+        long admitted = this.admissions.get();
+        long total = admitted + this.admissionRejects.get();
+        return total == 0 ? 1.0 : (double) admitted / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [loads=" + loads + ", loadFailures=" + loadFailures + ", loadMillis=" + loadMillis + ", loadCoalesced=" + loadCoalesced + ", leaseAcquired=" + leaseAcquired + ", leaseWaits=" + leaseWaits + ", staleServed=" + staleServed + ", refreshes=" + refreshes + ", tombstoneSets=" + tombstoneSets + ", tombstoneHits=" + tombstoneHits + ", bloomSkips=" + bloomSkips + ", admissions=" + admissions + ", admissionRejects=" + admissionRejects + ", syncPending=" + syncPending + ", syncHandled=" + syncHandled + ", syncNanos=" + syncNanos + ", syncOverflows=" + syncOverflows + ", syncSkips=" + syncSkips + ", syncReconnects=" + syncReconnects + ", syncResyncs=" + syncResyncs + ", syncLagMillis=" + syncLagMillis + ", syncState=" + syncState + "]";
+    }
+
+}
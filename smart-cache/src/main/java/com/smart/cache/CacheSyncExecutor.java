@@ -0,0 +1,221 @@
+package com.smart.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.smart.cache.Cache.Level;
+
+/**
+ * CacheSyncExecutor
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 异步执行接收到的同步命令,不阻塞订阅线程.按(name,key)的hash分配至单线程的有界队列,同一key的命令按接收顺序执行,不同key并行.
+ * mset/mdel按key拆分至各队列.rem/cls按名称加入一个队列执行,不阻塞其他队列:其他队列中先接收的set/del可能晚于rem/cls执行,
+ * set重新读取Redis,del仅删除,执行结果与按序执行一致.队列已满时丢弃key命令并直接删除对应名称的本地缓存,rem/cls在接收线程中执行.
+ * threads为0时在接收线程中执行.
+ *
+ * @author YRain
+ */
+public class CacheSyncExecutor {
+
+    public static final Logger         logger                = LoggerFactory.getLogger(CacheSyncExecutor.class);
+
+    // 队列已满的日志间隔次数
+    private static final long          OVERFLOW_LOG_INTERVAL = 1000;
+    // 关闭时等待已接收命令执行完成的时间
+    private static final long          SHUTDOWN_WAIT_MILLIS  = 5000;
+
+    private final CacheTemplate        cacheTemplate;
+    private final CacheSyncHandler     cacheSyncHandler;
+    private final CacheStats           stats;
+    private final ThreadPoolExecutor[] stripes;
+
+    public CacheSyncExecutor(CacheTemplate cacheTemplate, CacheSyncHandler cacheSyncHandler, int threads, int queueSize) {
+        this.cacheTemplate = cacheTemplate;
+        this.cacheSyncHandler = cacheSyncHandler;
+        this.stats = cacheTemplate.getStats();
+        this.stripes = new ThreadPoolExecutor[Math.max(0, threads)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactoryBuilder().setNameFormat("CacheSyncExecutor-" + i + "-%d").setDaemon(true).build());
+        }
+    }
+
+    /**
+     * 执行同步命令
+     */
+    public void execute(Command cmd) {
+        if (this.stripes.length == 0) {
+            this.run(cmd);
+            return;
+        }
+        switch (cmd.oper) {
+            case Command.OPT_MSET:
+            case Command.OPT_MDEL:
+                Map<Integer, List<String>> keys = Maps.newHashMap();
+                for (String key : cmd.keys) {
+                    int index = this.indexOf(cmd.name, key);
+                    if (!keys.containsKey(index)) {
+                        keys.put(index, Lists.<String> newArrayList());
+                    }
+                    keys.get(index).add(key);
+                }
+                for (Map.Entry<Integer, List<String>> entry : keys.entrySet()) {
+                    Command part = this.command(cmd.oper, cmd.name, cmd.node);
+                    part.src = cmd.src;
+                    part.keys = entry.getValue();
+                    this.submit(this.stripes[entry.getKey()], part);
+                }
+                break;
+            default:
+                this.submit(this.stripes[this.indexOf(cmd.name, cmd.key)], cmd);
+        }
+    }
+
+    /**
+     * 执行合并后的同步命令,拆分为cls,rem,mdel,mset依次执行
+     */
+    public void execute(CommandBatch batch) {
+        if (this.stripes.length == 0) {
+            long start = System.nanoTime();
+            this.stats.recordSyncQueued();
+            try {
+                this.cacheSyncHandler.handle(batch);
+            } catch (Exception e) {
+                logger.warn("execute > " + batch + " failed", e);
+            } finally {
+                this.stats.recordSyncHandled(System.nanoTime() - start);
+            }
+            return;
+        }
+        if (batch.cls) {
+            this.execute(this.command(Command.OPT_CLS, null, batch.node));
+        }
+        for (Map.Entry<String, Long> entry : batch.rems.entrySet()) {
+            Command rem = this.command(Command.OPT_REM, entry.getKey(), batch.node);
+            rem.generation = entry.getValue();
+            this.execute(rem);
+        }
+        for (Map.Entry<String, List<String>> entry : batch.dels.entrySet()) {
+            Command mdel = this.command(Command.OPT_MDEL, entry.getKey(), batch.node);
+            mdel.keys = entry.getValue();
+            this.execute(mdel);
+        }
+        for (Map.Entry<String, List<String>> entry : batch.sets.entrySet()) {
+            Command mset = this.command(Command.OPT_MSET, entry.getKey(), batch.node);
+            mset.keys = entry.getValue();
+            this.execute(mset);
+        }
+    }
+
+    /**
+     * 停止接收命令,等待已接收的命令执行完成,超过SHUTDOWN_WAIT_MILLIS时丢弃未执行的命令
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            stripe.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT_MILLIS;
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            try {
+                if (!stripe.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    logger.warn("shutdown > " + stripe.shutdownNow().size() + " commands discarded");
+                }
+            } catch (InterruptedException e) {
+                stripe.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 等待执行的命令数量
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            size += stripe.getQueue().size();
+        }
+        return size;
+    }
+
+    //
+    // private
+    // ---------------------------------------------------------------------------------------------------
+    private void submit(ThreadPoolExecutor stripe, final Command cmd) {
+        final long start = System.nanoTime();
+        this.stats.recordSyncQueued();
+        try {
+            stripe.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        CacheSyncExecutor.this.handle(cmd);
+                    } finally {
+                        stats.recordSyncHandled(System.nanoTime() - start);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.stats.recordSyncHandled(System.nanoTime() - start);
+            this.overflow(cmd);
+        }
+    }
+
+    private void run(Command cmd) {
+        long start = System.nanoTime();
+        this.stats.recordSyncQueued();
+        try {
+            this.handle(cmd);
+        } finally {
+            this.stats.recordSyncHandled(System.nanoTime() - start);
+        }
+    }
+
+    private void handle(Command cmd) {
+        try {
+            this.cacheSyncHandler.handle(cmd);
+        } catch (Exception e) {
+            logger.warn("handle > " + cmd + " failed", e);
+        }
+    }
+
+    /**
+     * 队列已满:key命令改为删除该名称的本地缓存,rem/cls在接收线程中执行.每OVERFLOW_LOG_INTERVAL次记录一次日志
+     */
+    private void overflow(Command cmd) {
+        this.stats.recordSyncOverflow();
+        long overflows = this.stats.getSyncOverflows();
+        if (overflows % OVERFLOW_LOG_INTERVAL == 1) {
+            logger.warn("overflow > queue full, " + overflows + " overflows, last: " + cmd);
+        }
+        if (cmd.oper == Command.OPT_REM || cmd.oper == Command.OPT_CLS) {
+            this.handle(cmd);
+        } else if (cmd.oper != Command.OPT_FETCH) {
+            this.cacheTemplate.rem(cmd.name, Level.Local);
+        }
+    }
+
+    private int indexOf(String name, String key) {
+        int hash = 31 * (name == null ? 0 : name.hashCode()) + (key == null ? 0 : key.hashCode());
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % this.stripes.length;
+    }
+
+    private Command command(byte oper, String name, long node) {
+        Command cmd = new Command();
+        cmd.oper = oper;
+        cmd.name = name;
+        cmd.node = node;
+        return cmd;
+    }
+
+}
@@ -1,5 +1,9 @@
 package com.smart.cache;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,18 +26,54 @@ public class CacheSyncHandler {
         this.cacheTemplate = cacheTemplate;
     }
 
-    private void onSet(String name, String key) {
-        logger.debug("onSet > " + name + "." + key.toString());
-        this.cacheTemplate.get(name, key, Level.Remote);
+    private void onSet(String name, String key, long version) {
+        logger.debug("onSet > " + name + "." + key.toString() + (version == 0 ? "" : ",version:" + version));
+        this.cacheTemplate.bloomPut(name, Collections.singletonList(key), Level.Local);
+        if (this.isStale(name, key, version)) {
+            return;
+        }
+        this.cacheTemplate.lookup(name, key, Level.Remote);
     }
 
-    private void onDel(String name, String key) {
-        logger.debug("onDel > " + name + "." + key.toString());
+    private void onDel(String name, String key, long version) {
+        logger.debug("onDel > " + name + "." + key.toString() + (version == 0 ? "" : ",version:" + version));
+        // 未开启set通知时,写入也以del通知,同样记录至布隆过滤器
+        this.cacheTemplate.bloomPut(name, Collections.singletonList(key), Level.Local);
+        if (this.isStale(name, key, version)) {
+            return;
+        }
         this.cacheTemplate.del(name, key, Level.Local);
     }
 
-    private void onRem(String name) {
-        logger.debug("onRem > " + name);
+    /**
+     * 命令的版本号不新于本地缓存值的版本号:本地已是该次或更晚写入的值,无需删除或重新读取.仅比较Redis生成的计数版本号
+     */
+    private boolean isStale(String name, String key, long version) {
+        if (version < CacheEnvelope.VERSION_BASE || this.cacheTemplate.getLocalVersion(name, key) < version) {
+            return false;
+        }
+        logger.debug("skip > " + name + "." + key + ",version:" + version);
+        this.cacheTemplate.getStats().recordSyncSkip();
+        return true;
+    }
+
+    private void onMset(String name, List<String> keys) {
+        logger.debug("onMset > " + name + "." + keys);
+        this.cacheTemplate.bloomPut(name, keys, Level.Local);
+        this.cacheTemplate.getAll(name, keys, Level.Remote);
+    }
+
+    private void onMdel(String name, List<String> keys) {
+        logger.debug("onMdel > " + name + "." + keys);
+        this.cacheTemplate.bloomPut(name, keys, Level.Local);
+        this.cacheTemplate.delAll(name, keys, Level.Local);
+    }
+
+    private void onRem(String name, long generation) {
+        logger.debug("onRem > " + name + (generation == 0 ? "" : ",generation:" + generation));
+        if (generation > 0) {
+            this.cacheTemplate.updateGeneration(name, generation);
+        }
         this.cacheTemplate.rem(name, Level.Local);
     }
 
@@ -44,11 +84,9 @@ public class CacheSyncHandler {
 
     private void onFetch(String name, String key, String fetch) {
         logger.debug("onFetch > " + name + "." + key.toString() + "," + "fetch:" + fetch);
-        boolean exists = this.cacheTemplate.exists(name, key, Level.Local);
-        if (exists) {
-            Object value = this.cacheTemplate.get(name, key, Level.Local);
-            int ttl = this.cacheTemplate.ttl(name, key, Level.Local);
-            this.cacheTemplate.getJedisTemplate().hset(fetch, Cache.ID, new CacheData(name, key, Objects.toString(value), ttl, Level.Local), cacheTemplate.getFetchTimeoutSeconds());
+        CacheData data = this.cacheTemplate.getData(name, key, Level.Local);
+        if (data.getTtl() >= 0) {
+            this.cacheTemplate.getJedisTemplate().hset(fetch, Cache.ID, new CacheData(name, key, Objects.toString(data.getValue()), data.getTtl(), Level.Local), cacheTemplate.getFetchTimeoutSeconds());
         } else {
             this.cacheTemplate.getJedisTemplate().hset(fetch, Cache.ID, new CacheData(name, key, null, -1, Level.Local), cacheTemplate.getFetchTimeoutSeconds());
         }
@@ -57,13 +95,13 @@ public class CacheSyncHandler {
     public void handle(Command cmd) {
         switch (cmd.oper) {
             case Command.OPT_SET:
-                onSet(cmd.name, cmd.key);
+                onSet(cmd.name, cmd.key, cmd.version);
                 break;
             case Command.OPT_DEL:
-                onDel(cmd.name, cmd.key);
+                onDel(cmd.name, cmd.key, cmd.version);
                 break;
             case Command.OPT_REM:
-                onRem(cmd.name);
+                onRem(cmd.name, cmd.generation);
                 break;
             case Command.OPT_CLS:
                 onCls();
@@ -71,9 +109,33 @@ public class CacheSyncHandler {
             case Command.OPT_FETCH:
                 onFetch(cmd.name, cmd.key, cmd.fetch);
                 break;
+            case Command.OPT_MSET:
+                onMset(cmd.name, cmd.keys);
+                break;
+            case Command.OPT_MDEL:
+                onMdel(cmd.name, cmd.keys);
+                break;
             default:
                 logger.warn("Unknown message type = " + cmd.oper);
         }
     }
 
+    /**
+     * 执行合并后的同步命令,按名称批量删除与重新读取本地缓存
+     */
+    public void handle(CommandBatch batch) {
+        if (batch.cls) {
+            onCls();
+        }
+        for (Map.Entry<String, Long> entry : batch.rems.entrySet()) {
+            onRem(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : batch.dels.entrySet()) {
+            onMdel(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : batch.sets.entrySet()) {
+            onMset(entry.getKey(), entry.getValue());
+        }
+    }
+
 }
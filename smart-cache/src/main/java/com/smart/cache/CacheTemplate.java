@@ -1,36 +1,57 @@
 package com.smart.cache;
 
+import java.io.File;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.smart.cache.Cache.Level;
 import com.smart.cache.Cache.Operator;
+import com.smart.cache.local.CopyPolicy;
+import com.smart.cache.local.EhcacheLocalStore;
+import com.smart.cache.local.FrequencySketch;
+import com.smart.cache.local.LocalBytes;
+import com.smart.cache.local.LocalConfig;
+import com.smart.cache.local.LocalEntry;
+import com.smart.cache.local.LocalStore;
+import com.smart.cache.local.OffHeapLocalStore;
+import com.smart.cache.local.PersistentLocalStore;
+import com.smart.cache.local.TinyLfuLocalStore;
 import com.smart.jedis.JedisTemplate;
+import com.smart.jedis.Tuple;
 import com.smart.util.Dates;
+import com.smart.util.Strings;
 import com.smart.util.Utils;
 
 import net.sf.ehcache.CacheException;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.config.CacheConfiguration;
-import net.sf.ehcache.config.Configuration;
-import net.sf.ehcache.config.DiskStoreConfiguration;
-import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import net.sf.ehcache.config.MemoryUnit;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
 
 /**
  * CacheTemplate
@@ -41,6 +62,33 @@ import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 public class CacheTemplate implements InitializingBean {
 
     public static final Logger                               logger                               = LoggerFactory.getLogger(CacheTemplate.class);
+    // 本地缓存存储类型
+    public static final String                               LOCAL_STORE_EHCACHE                  = "ehcache";
+    public static final String                               LOCAL_STORE_TINYLFU                  = "tinylfu";
+    public static final String                               LOCAL_STORE_OFFHEAP                  = "offheap";
+    // 同步命令发送方式
+    public static final String                               SYNC_PUBSUB                          = "pubsub";
+    public static final String                               SYNC_STREAM                          = "stream";
+    // 等待租约时轮询远程缓存的间隔(毫秒)
+    private static final int                                 LEASE_POLL_MILLIS                    = 20;
+    // 保留旧值的最大数量
+    private static final int                                 LEASE_STALE_MAX_SIZE                 = 10000;
+    // 加载耗时移动平均的权重
+    private static final double                              REFRESH_COST_ALPHA                   = 0.2;
+    // 后台刷新队列长度
+    private static final int                                 REFRESH_QUEUE_SIZE                   = 1000;
+    // 有序集合索引中永久缓存的分值
+    private static final long                                PERMANENT_SCORE                      = Long.MAX_VALUE;
+    // 索引快照过期时间,后台删除中断(如节点重启)时快照最终自动清除
+    private static final int                                 PURGE_SNAPSHOT_SECONDS               = 24 * 60 * 60;
+    // 已结束的后台删除进度保留时间
+    private static final long                                PURGE_RETAIN_MILLIS                  = 10 * 60 * 1000;
+    // 代际号与缓存名称的分隔符
+    private static final String                              GENERATION_SPLITER                   = "#";
+    // 索引迁移每批Key数量
+    private static final int                                 MIGRATE_BATCH_SIZE                   = 1000;
+    // 缓存值封装格式魔数,供Lua脚本识别
+    private static final byte[]                              ENVELOPE_MAGIC                       = new byte[] { CacheEnvelope.MAGIC_0, CacheEnvelope.MAGIC_1 };
 
     //
     // 配置项
@@ -51,9 +99,67 @@ public class CacheTemplate implements InitializingBean {
     private boolean                                          localEnabled                         = true;
     // 是否开启set同步命令
     private boolean                                          setCmdEnabled                        = false;
-
-    // ehcache设置
+    // 是否启用Lua脚本写入,单次往返完成写值,索引维护及同步命令发布
+    private boolean                                          scriptEnabled                        = false;
+    // 是否启用缓存值封装,附带版本号与绝对过期时间,远程命中时一次GET即可得到剩余TTL.compareAndSet写入封装值,需全部节点启用
+    private boolean                                          envelopeEnabled                      = false;
+    // 是否以Redis中按缓存名称递增的版本号写入封装缓存值并随同步命令发送,接收方跳过不新于本地缓存的命令.需启用envelopeEnabled
+    private boolean                                          versionEnabled                       = false;
+    // 是否启用代际模式,rem/cls递增缓存名称的代际号,旧代际缓存值立即不可见,并由后台清理.启用后名称中含#的缓存Key改变(#转义为##)
+    private boolean                                          generationEnabled                    = false;
+    // 代际号定时刷新间隔,补偿丢失的同步命令
+    private int                                              generationRefreshSeconds             = 60;
+    // 是否以有序集合(分值为过期时间戳)作为缓存Key索引,启用前以migrateIndex迁移已有Hash索引
+    private boolean                                          sortedIndexEnabled                   = false;
+    // 是否对所有缓存启用加载租约,未在leaseConfigs中配置的缓存使用leaseConfig
+    private boolean                                          leaseEnabled                         = false;
+    // 默认加载租约配置
+    private LeaseConfig                                      leaseConfig                          = new LeaseConfig();
+    // 按缓存名称配置加载租约,配置后即对该缓存启用
+    private Map<String, LeaseConfig>                         leaseConfigs                         = Maps.newHashMap();
+    // 按缓存名称配置布隆过滤器,远程读取前过滤确定未写入的key
+    private Map<String, BloomConfig>                         bloomConfigs                         = Maps.newHashMap();
+    // 布隆过滤器本地快照刷新间隔
+    private int                                              bloomRefreshSeconds                  = 60;
+    // 带loader的get加载结果为null时,是否写入空值标记
+    private boolean                                          tombstoneEnabled                     = false;
+    // 空值标记过期时间
+    private int                                              tombstoneTimeToLiveSeconds           = 60;
+    // 是否对所有缓存启用提前刷新(XFetch),仅作用于带loader与ttl的get
+    private boolean                                          refreshAheadEnabled                  = false;
+    // 默认提前刷新系数,越大越提前,1为标准值
+    private double                                           refreshBeta                          = 1.0;
+    // 按缓存名称配置提前刷新系数,配置后即对该缓存启用
+    private Map<String, Double>                              refreshBetas                         = Maps.newHashMap();
+    // 后台刷新线程数
+    private int                                              refreshThreads                       = 4;
+    // rem/cls后台删除每批Key数量
+    private int                                              purgeBatchSize                       = 500;
+    // rem/cls后台删除每批间隔(毫秒),避免持续占用Redis
+    private long                                             purgeIntervalMillis                  = 10;
+
+    // 本地缓存设置
     // ---------------------------------------------------------------------------------------------------------------------------
+    // 本地缓存存储类型:ehcache,tinylfu,offheap.已设置localStore时忽略
+    private String                                           localStoreType                       = LOCAL_STORE_EHCACHE;
+    // tinylfu本地缓存最大元素数量
+    private long                                             localMaximumSize                     = TinyLfuLocalStore.DEFAULT_MAXIMUM_SIZE;
+    // offheap本地缓存最大直接内存大小
+    private String                                           localMaxBytesOffHeap                 = "1024M";
+    // 本地缓存值默认复制策略
+    private CopyPolicy                                       localCopyPolicy                      = CopyPolicy.COPY;
+    // 各缓存名称的复制策略,未配置的使用localCopyPolicy
+    private Map<String, CopyPolicy>                          localCopyPolicies                    = Maps.newHashMap();
+    // 各缓存名称的本地缓存配置(过期时间,容量,淘汰策略,是否缓存于本地),未配置的使用全局设置.运行时以setLocalConfig修改
+    private Map<String, LocalConfig>                         localConfigs                         = new ConcurrentHashMap<>();
+    // 远程读取命中后写入本地缓存的准入频率,近期读取次数达到该值才写入,避免仅读取一次的key挤出热点.0或1为不限制,频率计数上限为15,大于15按15处理
+    private int                                              localAdmissionThreshold              = 0;
+    // 每个缓存名称准入频率统计的预计key数量,累计读取达到其10倍时频率减半
+    private long                                             localAdmissionSampleSize             = 10000;
+    // 是否持久化本地缓存,关闭时写入快照,重启时恢复停机期间未被写入的缓存名称.写入时递增失效纪元,需所有节点一致开启
+    private boolean                                          localPersistentEnabled               = false;
+    // 稳定的节点标识,用于命名本地缓存快照,默认为本机IP
+    private String                                           nodeId;
     // 本地缓存存储磁盘位置
     private String                                           localStoreLocation                   = "/cache/";
     // 本地缓存最大内存大小
@@ -63,17 +169,58 @@ public class CacheTemplate implements InitializingBean {
 
     // 本地缓存10分钟过期
     private int                                              localTimeToLiveSeconds               = 10 * 60;
-    // 不使用timeToIdle
-    private final int                                        localTimeToIdleSeconds               = 0;
     // 本地缓存3分钟清理一次
     private int                                              localDiskExpiryThreadIntervalSeconds = 3 * 60;
     // fetch命令最长等待5秒
     private int                                              fetchTimeoutSeconds                  = 3;
+    // 同步命令合并发送窗口(毫秒),窗口内的命令合并为一条消息并去除重复Key,0为立即发送.启用后脚本写入不再发布同步命令
+    private int                                              syncBatchWindowMillis                = 0;
+    // 合并中的Key数量达到该值时立即发送
+    private int                                              syncBatchMaxKeys                     = 1000;
+    // 是否以二进制格式发布pubsub同步命令,否则以序列化的Command发布.旧版本节点仅识别序列化格式,滚动升级时先以false部署全部节点,再改为true
+    private boolean                                          syncFrameEnabled                     = false;
+    // 同步命令发送方式:pubsub,stream.stream需Redis 5.0+,节点断线重连后补偿期间的命令,补偿不全时清空本地缓存
+    private String                                           syncType                             = SYNC_PUBSUB;
+    // stream保留的同步命令数量(近似)
+    private long                                             syncStreamMaxLength                  = 100000;
+    // stream每次读取的同步命令数量
+    private int                                              syncStreamBatchSize                  = 500;
+    // stream已读取至最新时XREAD BLOCK等待新命令的最长时间(毫秒)
+    private int                                              syncStreamBlockMillis                = 1000;
+    // 接收到的同步命令的执行线程数,按(name,key)分配,同一key顺序执行.0为在接收线程中执行
+    private int                                              syncHandlerThreads                   = 4;
+    // 每个执行线程的队列长度,队列已满时丢弃命令并删除对应名称的本地缓存
+    private int                                              syncHandlerQueueSize                 = 10000;
+    // pubsub订阅连接的心跳间隔(秒),超过3个间隔未收到心跳时断开重连.0为不检测
+    private int                                              syncHeartbeatSeconds                 = 5;
+    // pubsub订阅断开后重连的最大退避间隔(秒),自1秒起倍增
+    private int                                              syncReconnectMaxSeconds              = 30;
+    // 是否维护失效纪元(启用本地持久化时总是维护),pubsub重连后仅删除断开期间有写入的缓存名称,否则清空全部本地缓存
+    private boolean                                          syncEpochEnabled                     = false;
 
     private JedisTemplate                                    jedisTemplate;
-    private net.sf.ehcache.CacheManager                      cacheManager;
+    private LocalStore                                       localStore;
     private CacheSync                                        cacheSync;
-    private final ConcurrentHashMap<String, Future<Ehcache>> ehcaches                             = new ConcurrentHashMap<>();
+    // 集群脚本写入时,已登记至smart:cache:store的缓存名称
+    private final Set<String>                                registeredNames                      = Sets.newConcurrentHashSet();
+    // 正在加载中的缓存,同一JVM内相同name,key仅执行一次加载
+    private final ConcurrentHashMap<String, Future<Object>>  loadings                             = new ConcurrentHashMap<>();
+    private final CacheStats                                 stats                                = new CacheStats();
+    // 启用加载租约时,本地缓存删除后保留的旧值
+    private com.google.common.cache.Cache<String, LocalEntry> stales;
+    // 各缓存名称加载耗时(毫秒)的指数加权移动平均
+    private final ConcurrentHashMap<String, Double>          loadCosts                            = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor                               refreshExecutor;
+    // 各缓存名称的布隆过滤器本地快照
+    private final ConcurrentHashMap<String, CacheBloom>      blooms                               = new ConcurrentHashMap<>();
+    // 各缓存名称远程读取的访问频率
+    private final ConcurrentHashMap<String, FrequencySketch> admissions                           = new ConcurrentHashMap<>();
+    // 各缓存名称代际号的本地缓存
+    private final ConcurrentHashMap<String, Long>            generations                          = new ConcurrentHashMap<>();
+    private ScheduledExecutorService                         scheduledExecutor;
+    // rem/cls后台删除进度,以索引快照Key区分
+    private final ConcurrentHashMap<String, CachePurge>      purges                               = new ConcurrentHashMap<>();
+    private ExecutorService                                  purgeExecutor;
 
     @SuppressWarnings("deprecation")
     @Override
@@ -82,35 +229,64 @@ public class CacheTemplate implements InitializingBean {
         Cache.HOST = Utils.getLocalHostIP();
         Cache.CACHE_STORE = key + spliter + "cache" + spliter + "store";
         Cache.CACHE_STORE_SYNC = Cache.CACHE_STORE + spliter + "sync";
+        Cache.CACHE_INDEX = key + spliter + "cache" + spliter + "index";
+        Cache.CACHE_GENERATION = key + spliter + "cache" + spliter + "generation";
+        Cache.CACHE_EPOCH = key + spliter + "cache" + spliter + "epoch";
+        Cache.CACHE_LEASE = key + spliter + "cache" + spliter + "lease";
+        Cache.CACHE_BLOOM = key + spliter + "cache" + spliter + "bloom";
+        Cache.CACHE_NODE = key + spliter + "cache" + spliter + "node";
+        Cache.CACHE_STREAM = key + spliter + "cache" + spliter + "stream";
+        Cache.CACHE_VERSION = key + spliter + "cache" + spliter + "version";
+        if (this.versionEnabled && !this.envelopeEnabled) {
+            logger.warn("afterPropertiesSet > versionEnabled requires envelopeEnabled, disabled");
+            this.versionEnabled = false;
+        }
+        if (this.syncBatchWindowMillis > 0 && !this.syncFrameEnabled && !SYNC_STREAM.equals(this.syncType)) {
+            logger.warn("afterPropertiesSet > syncBatchWindowMillis requires syncFrameEnabled, disabled");
+            this.syncBatchWindowMillis = 0;
+        }
+        this.stales = CacheBuilder.newBuilder().maximumSize(LEASE_STALE_MAX_SIZE).expireAfterWrite(localTimeToLiveSeconds, TimeUnit.SECONDS).build();
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new ThreadFactoryBuilder().setNameFormat("CacheTemplate.Refresh-%d").setDaemon(true).build());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        this.purgeExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("CacheTemplate.Purge-%d").setDaemon(true).build());
+        if (!this.bloomConfigs.isEmpty() || this.generationEnabled) {
+            this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("CacheTemplate.Schedule-%d").setDaemon(true).build());
+        }
+        if (this.generationEnabled) {
+            this.scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshGenerations();
+                }
+            }, generationRefreshSeconds, generationRefreshSeconds, TimeUnit.SECONDS);
+        }
+        if (!this.bloomConfigs.isEmpty()) {
+            this.scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshBlooms();
+                }
+            }, bloomRefreshSeconds, bloomRefreshSeconds, TimeUnit.SECONDS);
+        }
         if (this.localEnabled) {
-            Configuration configuration = new Configuration();
-            configuration.setName(Cache.ID);
-            configuration.setMaxBytesLocalHeap(localMaxBytesLocalHeap);
-            configuration.setMaxBytesLocalDisk(localMaxBytesLocalDisk);
-            // DiskStore
-            // 每次启动设置新的文件地址,以避免重启期间一级缓存未同步,以及单机多应用启动造成EhcacheManager重复的问题.
-            DiskStoreConfiguration dsc = new DiskStoreConfiguration();
-            dsc.setPath(localStoreLocation + Cache.ID);
-            configuration.diskStore(dsc);
-            // DefaultCache
-            CacheConfiguration defaultCacheConfiguration = new CacheConfiguration();
-            defaultCacheConfiguration.setEternal(false);
-            defaultCacheConfiguration.setOverflowToDisk(true);
-            defaultCacheConfiguration.setDiskPersistent(false);
-            defaultCacheConfiguration.memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU);
-            defaultCacheConfiguration.setDiskExpiryThreadIntervalSeconds(localDiskExpiryThreadIntervalSeconds);
-            // 默认false,使用引用.设置为true,避免外部代码修改了缓存对象.造成EhCache的缓存对象也随之改变
-            // 但是设置为true后,将引起element的tti不自动刷新.如果直接新建element去覆盖原值.则本地ttl和远程ttl会产生一定的误差.
-            // 因此,使用时放弃手动覆盖方式刷新本地tti,当本地tti过期后,自动从Redis中再获取即可.
-            defaultCacheConfiguration.copyOnRead(true);
-            defaultCacheConfiguration.copyOnWrite(true);
-            defaultCacheConfiguration.setTimeToIdleSeconds(localTimeToIdleSeconds);
-            defaultCacheConfiguration.setTimeToLiveSeconds(localTimeToLiveSeconds);
-            configuration.setDefaultCacheConfiguration(defaultCacheConfiguration);
-            configuration.setDynamicConfig(false);
-            configuration.setUpdateCheck(false);
-            this.cacheManager = new CacheManager(configuration);
-            this.cacheSync = new RedisPubSubSync(this);// 使用Redis Topic发送订阅缓存变更消息
+            if (this.localStore == null) {
+                this.localStore = this.newLocalStore();
+            }
+            for (Map.Entry<String, LocalConfig> entry : this.localConfigs.entrySet()) {
+                this.localStore.configure(entry.getKey(), entry.getValue());
+            }
+            if (this.localPersistentEnabled) {
+                this.localStore = this.newPersistentLocalStore(this.localStore);
+            }
+            Cache.NODE = this.jedisTemplate.incr(Cache.CACHE_NODE);
+            if (SYNC_STREAM.equals(this.syncType)) {
+                this.cacheSync = new RedisStreamSync(this);// 使用Redis Stream发送读取缓存变更消息
+            } else {
+                this.cacheSync = new RedisPubSubSync(this);// 使用Redis Topic发送订阅缓存变更消息
+            }
+            if (this.localStore instanceof PersistentLocalStore) {
+                this.restoreLocal();
+            }
         }
     }
 
@@ -124,10 +300,12 @@ public class CacheTemplate implements InitializingBean {
         this.set(name, key, value, Level.Remote);
         if (localEnabled) {
             this.set(name, key, value, Level.Local);
-            if (this.setCmdEnabled) {
-                this.sendSetCmd(name, key);
-            } else {
-                this.sendDelCmd(name, key);
+            if (!this.isScriptSync()) { // 脚本写入时同步命令已随写入发布
+                if (this.setCmdEnabled) {
+                    this.sendSetCmd(name, key);
+                } else {
+                    this.sendDelCmd(name, key);
+                }
             }
         }
     }
@@ -137,10 +315,11 @@ public class CacheTemplate implements InitializingBean {
      */
     protected void set(String name, String key, Object value, Level level) {
         if (level.equals(Level.Local)) {
-            if (!localEnabled) {
+            if (!this.isLocalEnabled(name)) {
                 return;
             }
-            this.getEhcache(name).put(new Element(key, value, false, localTimeToIdleSeconds, localTimeToLiveSeconds));
+            this.localStore.put(name, new LocalEntry(key, this.toLocal(name, value), this.getLocalTtl(name)));
+            this.stales.invalidate(name + spliter + key);
         } else {
             this.syncToRedis(name, key, value, Operator.SET);
         }
@@ -159,10 +338,12 @@ public class CacheTemplate implements InitializingBean {
         this.set(name, key, value, ttl, Level.Remote);
         if (localEnabled) {
             this.set(name, key, value, ttl, Level.Local);
-            if (this.setCmdEnabled) {
-                this.sendSetCmd(name, key);
-            } else {
-                this.sendDelCmd(name, key);
+            if (!this.isScriptSync()) { // 脚本写入时同步命令已随写入发布
+                if (this.setCmdEnabled) {
+                    this.sendSetCmd(name, key);
+                } else {
+                    this.sendDelCmd(name, key);
+                }
             }
         }
     }
@@ -172,18 +353,7 @@ public class CacheTemplate implements InitializingBean {
      */
     protected void set(String name, String key, Object value, int ttl, Level level) {
         if (level.equals(Level.Local)) {
-            if (!localEnabled) {
-                return;
-            }
-            if (ttl < 0) {
-                return;
-            } else if (ttl == 0) {
-                this.getEhcache(name).put(new Element(key, value, false, localTimeToIdleSeconds, localTimeToLiveSeconds));
-            } else {
-                // 当设置的ttl时间大于本地默认的缓存TTL,则使用本地默认的TTL,即localTimeToIdleSeconds.反之亦然.
-                ttl = ttl < localTimeToLiveSeconds ? ttl : localTimeToLiveSeconds;
-                this.getEhcache(name).put(new Element(key, value, false, localTimeToIdleSeconds, ttl));
-            }
+            this.setLocal(name, key, value, ttl, 0);
         } else {
             this.syncToRedis(name, key, value, ttl, Operator.SET); // 记录缓存名称到Redis
         }
@@ -192,36 +362,141 @@ public class CacheTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 设置本地缓存与过期时间,记录远程缓存值的版本号(0为未知)
+     */
+    private void setLocal(String name, String key, Object value, int ttl, long version) {
+        if (!this.isLocalEnabled(name)) {
+            return;
+        }
+        LocalEntry entry = this.newEntry(name, key, value, ttl, version);
+        if (entry == null) {
+            return;
+        }
+        this.localStore.put(name, entry);
+        this.stales.invalidate(name + spliter + key);
+    }
+
+    /**
+     * 本地缓存值记录的远程版本号,不存在或未知时为0
+     */
+    protected long getLocalVersion(String name, String key) {
+        if (!this.isLocalEnabled(name)) {
+            return 0;
+        }
+        LocalEntry entry = this.localStore.getQuiet(name, key);
+        return entry == null ? 0 : entry.getVersion();
+    }
+
     //
     // setIfAbsent
     // ---------------------------------------------------------------------------------------------------
     /**
-     * 若缓存不存在则设置,若存在则返回原缓存值
+     * 若缓存不存在则设置,若存在则返回原缓存值.单次往返原子完成
      */
     public <T> T setIfAbsent(String name, String key, Object value) {
-        T existing = this.get(name, key);
-        if (existing == null) {
-            return existing;
-        } else {
-            this.set(name, key, value);
-            return null;
-        }
+        return this.setIfAbsent(name, key, value, 0);
     }
 
     //
     // setIfAbsent with ttl
     // ---------------------------------------------------------------------------------------------------
     /**
-     * 若缓存不存在则设置缓存与过期时间,若存在则返回原缓存值
+     * 若缓存不存在(或为空值标记)则设置缓存与过期时间,返回null;若存在则返回原缓存值.
+     * 以Lua脚本单次往返原子完成判断,写值,索引维护及同步命令发布
      */
     public <T> T setIfAbsent(String name, String key, Object value, int ttl) {
-        T existing = this.get(name, key);
+        if (null == value) {
+            return null;
+        }
+        this.bloomPut(name, Collections.singletonList(key), Level.Remote);
+        Object existing = this.atomicToRedis(CacheScripts.SET_IF_ABSENT, name, key, this.encodeValue(value, ttl), ttl, Tombstone.marker(), ENVELOPE_MAGIC);
+        if (existing != null) {
+            return this.unwrap(this.decodeValue((byte[]) existing));
+        }
+        this.afterAtomicWrite(name, key, value, ttl);
+        return null;
+    }
+
+    //
+    // compareAndSet
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 若当前版本号与expectedVersion一致则设置缓存,返回是否设置成功.单次往返原子完成.
+     * 版本号见getData(name, key, Level.Remote).getVersion(),0表示不存在或未封装的缓存值.
+     * 写入值以封装格式保存并生成新的版本号,须启用envelopeEnabled(读取该缓存的全部节点亦须启用),否则抛出IllegalStateException
+     */
+    public boolean compareAndSet(String name, String key, long expectedVersion, Object value) {
+        return this.compareAndSet(name, key, expectedVersion, value, 0);
+    }
+
+    /**
+     * 若当前版本号与expectedVersion一致则设置缓存与过期时间,返回是否设置成功
+     */
+    public boolean compareAndSet(String name, String key, long expectedVersion, Object value, int ttl) {
+        if (!this.envelopeEnabled) {
+            throw new IllegalStateException("compareAndSet requires envelopeEnabled");
+        }
+        if (null == value) {
+            return false;
+        }
+        byte[] expected = new byte[8];
+        Utils.putLong(expected, 0, expectedVersion);
+        long version = Math.max(System.currentTimeMillis(), expectedVersion + 1);
+        byte[] payload = value instanceof Tombstone ? Tombstone.marker() : this.jedisTemplate.serializeVal(value);
+        byte[] bytes = CacheEnvelope.encode(payload, version, CacheEnvelope.expireAt(ttl));
+        this.bloomPut(name, Collections.singletonList(key), Level.Remote);
+        Object result = this.atomicToRedis(CacheScripts.COMPARE_AND_SET, name, key, bytes, ttl, expected, ENVELOPE_MAGIC);
+        if (!Long.valueOf(1).equals(result)) {
+            return false;
+        }
+        this.afterAtomicWrite(name, key, value, ttl);
+        return true;
+    }
+
+    //
+    // getAndSet
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 设置缓存并返回原缓存值.单次往返原子完成
+     */
+    public <T> T getAndSet(String name, String key, Object value) {
+        return this.getAndSet(name, key, value, 0);
+    }
+
+    /**
+     * 设置缓存与过期时间并返回原缓存值
+     */
+    public <T> T getAndSet(String name, String key, Object value, int ttl) {
+        if (null == value) {
+            return null;
+        }
+        this.bloomPut(name, Collections.singletonList(key), Level.Remote);
+        Object existing = this.atomicToRedis(CacheScripts.GET_AND_SET, name, key, this.encodeValue(value, ttl), ttl);
+        this.afterAtomicWrite(name, key, value, ttl);
         if (existing == null) {
-            return existing;
-        } else {
-            this.set(name, key, value, ttl);
             return null;
         }
+        return this.unwrap(this.decodeValue((byte[]) existing));
+    }
+
+    //
+    // setTombstone
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 写入空值标记,表示缓存值确定不存在,过期时间为tombstoneTimeToLiveSeconds.
+     * 期间get返回null且不再穿透至数据源,写入真实值后自动覆盖
+     */
+    public void setTombstone(String name, String key) {
+        this.set(name, key, Tombstone.INSTANCE, this.tombstoneTimeToLiveSeconds);
+        this.stats.recordTombstoneSet();
+    }
+
+    /**
+     * 是否为空值标记
+     */
+    public boolean isTombstone(String name, String key) {
+        return this.lookup(name, key) instanceof Tombstone;
     }
 
     //
@@ -231,54 +506,113 @@ public class CacheTemplate implements InitializingBean {
      * 获取缓存值
      */
     public <T> T get(String name, String key) {
-        T value = null;
+        return this.unwrap(this.lookup(name, key));
+    }
+
+    /**
+     * 获取缓存值(根据缓存层级)
+     */
+    public <T> T get(String name, String key, Level level) {
+        return this.unwrap(this.lookup(name, key, level));
+    }
+
+    /**
+     * 获取缓存值,空值标记返回Tombstone.INSTANCE
+     */
+    public Object lookup(String name, String key) {
+        Object value = null;
         if (localEnabled) {
-            value = this.get(name, key, Level.Local);
+            value = this.lookup(name, key, Level.Local);
         }
         if (value == null) {
-            value = this.get(name, key, Level.Remote);
+            value = this.lookup(name, key, Level.Remote);
         }
         return value;
     }
 
     /**
-     * 获取缓存值(根据缓存层级)
+     * 获取缓存值(根据缓存层级),空值标记返回Tombstone.INSTANCE
      */
-    @SuppressWarnings("unchecked")
-    public <T> T get(String name, String key, Level level) {
-        T value = null;
+    public Object lookup(String name, String key, Level level) {
+        Object value = null;
         if (level.equals(Level.Local)) {
-            if (!localEnabled) {
+            if (!this.isLocalEnabled(name)) {
                 return null;
             }
-            if (!this.ehcaches.containsKey(name)) {
-                return null;
-            }
-            Element element = this.getEhcache(name).get(key);
+            LocalEntry entry = this.localStore.get(name, key);
             if (logger.isDebugEnabled()) {
                 logger.debug("get > name:" + name + ",key:" + key + ",local.ttl:" + this.ttl(name, key, Level.Local) + ",remote.ttl:" + this.ttl(name, key, Level.Remote) + ",level:" + level);
             }
-            if (element != null) {
-                value = (T) element.getObjectValue();
+            if (entry != null) {
+                value = this.fromLocal(entry.getValue());
             }
         } else {
-            value = this.jedisTemplate.get(this.getRedisKeyOfElement(name, key));
+            CacheBloom bloom = this.getBloom(name);
+            if (bloom != null && !bloom.mightContain(key) && this.bloomMissing(name, bloom, Collections.singletonList(key)).contains(key)) {
+                // key确定未写入过远程缓存
+                this.stats.recordBloomSkip();
+                return null;
+            }
+            CacheData data = this.getRemoteData(name, key);
             if (logger.isDebugEnabled()) {
                 logger.debug("get > name:" + name + ",key:" + key + ",local.ttl:" + this.ttl(name, key, Level.Local) + ",remote.ttl:" + this.ttl(name, key, Level.Remote) + ",level:" + level);
             }
-            if (value != null) {
-                int ttl = this.ttl(name, key, Level.Remote);
+            if (data != null) {
+                value = data.getValue();
+                int ttl = data.getTtl();
                 if (ttl < 0) {
                     // key 已经失效
                     // ignore...
-                } else {
-                    this.set(name, key, value, ttl, Level.Local);
+                } else if (this.admit(name, key)) {
+                    this.setLocal(name, key, value, ttl, data.getVersion());
                 }
             }
         }
         return value;
     }
 
+    /**
+     * 获取缓存值,不存在时调用loader加载并写入缓存.
+     * 同一JVM内相同name,key的并发加载仅执行一次,其余线程等待同一加载结果
+     */
+    public <T> T get(String name, String key, Callable<T> loader) {
+        return this.get(name, key, 0, loader);
+    }
+
+    /**
+     * 获取缓存值,不存在时调用loader加载并写入缓存与过期时间(0为不设置过期时间)
+     */
+    public <T> T get(String name, String key, int ttl, Callable<T> loader) {
+        Object value = this.lookup(name, key);
+        if (value == null) {
+            return this.load(name, key, ttl, loader);
+        }
+        this.refreshAhead(name, key, ttl, loader);
+        return this.unwrap(value);
+    }
+
+    /**
+     * 获取缓存值及其ttl,版本号(根据缓存层级).不存在时value为null,ttl为-1
+     * 远程缓存启用封装时仅需一次GET
+     */
+    public CacheData getData(String name, String key, Level level) {
+        CacheData data = null;
+        if (level.equals(Level.Local)) {
+            if (this.isLocalEnabled(name)) {
+                LocalEntry entry = this.localStore.get(name, key);
+                if (entry != null) {
+                    data = new CacheData(name, key, this.fromLocal(entry.getValue()), entry.getRemain(System.currentTimeMillis()), Level.Local);
+                }
+            }
+        } else {
+            data = this.getRemoteData(name, key);
+        }
+        if (data == null) {
+            data = new CacheData(name, key, null, -1, level);
+        }
+        return data;
+    }
+
     //
     // del
     // ---------------------------------------------------------------------------------------------------
@@ -286,7 +620,9 @@ public class CacheTemplate implements InitializingBean {
      * 删除单个缓存值
      */
     public void del(String name, String key) {
-        this.sendDelCmd(name, key);
+        if (!this.isScriptSync()) { // 脚本写入时同步命令已随删除发布
+            this.sendDelCmd(name, key);
+        }
         this.del(name, key, Level.Local);
         this.del(name, key, Level.Remote);
     }
@@ -299,15 +635,237 @@ public class CacheTemplate implements InitializingBean {
             if (!localEnabled) {
                 return;
             }
-            if (this.ehcaches.containsKey(name)) {
-                this.getEhcache(name).remove(key);
+            if (this.isStaleEnabled(name)) {
+                this.putStale(name, this.localStore.getQuiet(name, key));
             }
+            this.localStore.remove(name, key);
         } else {
             this.syncToRedis(name, key, Operator.DEL);
         }
         logger.debug("del > name:" + name + ",key:" + key + ",level:" + level);
     }
 
+    //
+    // getAll
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 批量获取缓存值.优先从本地缓存获取,未命中部分一次MGET(集群模式按slot分组)从远程获取并批量回填本地缓存
+     * 返回的Map仅包含命中的key,顺序与keys一致
+     */
+    public <T> Map<String, T> getAll(String name, Collection<String> keys) {
+        Map<String, T> values = Maps.newLinkedHashMap();
+        if (null == keys || keys.isEmpty()) {
+            return values;
+        }
+        Map<String, Object> locals = Collections.emptyMap();
+        if (localEnabled) {
+            locals = this.lookupAll(name, keys, Level.Local);
+        }
+        List<String> misses = Lists.newArrayList();
+        for (String key : keys) {
+            if (!locals.containsKey(key)) {
+                misses.add(key);
+            }
+        }
+        Map<String, Object> remotes = Collections.emptyMap();
+        if (!misses.isEmpty()) {
+            remotes = this.lookupAll(name, misses, Level.Remote);
+        }
+        for (String key : keys) {
+            Object value = locals.get(key);
+            if (value == null) {
+                value = remotes.get(key);
+            }
+            T unwrapped = this.unwrap(value);
+            if (unwrapped != null) {
+                values.put(key, unwrapped);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 批量获取缓存值(根据缓存层级)
+     */
+    public <T> Map<String, T> getAll(String name, Collection<String> keys, Level level) {
+        Map<String, T> values = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> entry : this.lookupAll(name, keys, level).entrySet()) {
+            T unwrapped = this.unwrap(entry.getValue());
+            if (unwrapped != null) {
+                values.put(entry.getKey(), unwrapped);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 批量获取缓存值(根据缓存层级),包含空值标记
+     */
+    private Map<String, Object> lookupAll(String name, Collection<String> keys, Level level) {
+        Map<String, Object> values = Maps.newLinkedHashMap();
+        if (null == keys || keys.isEmpty()) {
+            return values;
+        }
+        if (level.equals(Level.Local)) {
+            if (!this.isLocalEnabled(name)) {
+                return values;
+            }
+            for (LocalEntry entry : this.localStore.getAll(name, keys).values()) {
+                if (entry.getValue() != null) {
+                    values.put(entry.getKey(), this.fromLocal(entry.getValue()));
+                }
+            }
+        } else {
+            CacheBloom bloom = this.getBloom(name);
+            if (bloom != null) {
+                List<String> negatives = Lists.newArrayList();
+                for (String key : keys) {
+                    if (!bloom.mightContain(key)) {
+                        negatives.add(key);
+                    }
+                }
+                Set<String> missing = this.bloomMissing(name, bloom, negatives);
+                if (!missing.isEmpty()) {
+                    List<String> candidates = Lists.newArrayList();
+                    for (String key : keys) {
+                        if (!missing.contains(key)) {
+                            candidates.add(key);
+                        } else {
+                            this.stats.recordBloomSkip();
+                        }
+                    }
+                    if (candidates.isEmpty()) {
+                        return values;
+                    }
+                    keys = candidates;
+                }
+            }
+            List<LocalEntry> entries = Lists.newArrayList();
+            for (CacheData data : this.getRemoteAll(name, keys).values()) {
+                values.put(data.getKey(), data.getValue());
+                LocalEntry entry = this.newEntry(name, data.getKey(), data.getValue(), data.getTtl(), data.getVersion());
+                if (entry != null && this.admit(name, data.getKey())) {
+                    entries.add(entry);
+                }
+            }
+            if (this.isLocalEnabled(name) && !entries.isEmpty()) {
+                this.localStore.putAll(name, entries);
+            }
+        }
+        logger.debug("getAll > name:" + name + ",keys:" + keys.size() + ",hits:" + values.size() + ",level:" + level);
+        return values;
+    }
+
+    //
+    // setAll
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 批量设置缓存
+     */
+    public void setAll(String name, Map<String, ?> values) {
+        this.setAll(name, values, 0);
+    }
+
+    /**
+     * 批量设置缓存与过期时间.远程写入以pipeline完成,并仅发送一条合并的同步命令
+     */
+    public void setAll(String name, Map<String, ?> values, int ttl) {
+        if (null == values || values.isEmpty()) {
+            return;
+        }
+        this.setAll(name, values, ttl, Level.Remote);
+        if (localEnabled) {
+            this.setAll(name, values, ttl, Level.Local);
+            List<String> keys = Lists.newArrayList(values.keySet());
+            if (this.setCmdEnabled) {
+                this.sendMsetCmd(name, keys);
+            } else {
+                this.sendMdelCmd(name, keys);
+            }
+        }
+    }
+
+    /**
+     * 批量设置缓存与过期时间(根据缓存层级)
+     */
+    protected void setAll(String name, Map<String, ?> values, int ttl, Level level) {
+        if (level.equals(Level.Local)) {
+            if (!this.isLocalEnabled(name)) {
+                return;
+            }
+            List<LocalEntry> entries = Lists.newArrayList();
+            for (Map.Entry<String, ?> item : values.entrySet()) {
+                LocalEntry entry = this.newEntry(name, item.getKey(), item.getValue(), ttl);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            if (!entries.isEmpty()) {
+                this.localStore.putAll(name, entries);
+            }
+        } else {
+            Map<String, byte[]> keyvalues = Maps.newLinkedHashMap();
+            Map<String, Integer> fields = Maps.newLinkedHashMap();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                if (null == entry.getValue()) {
+                    continue;
+                }
+                keyvalues.put(this.getRedisKeyOfElement(name, entry.getKey()), this.encodeValue(entry.getValue(), ttl));
+                fields.put(entry.getKey(), ttl);
+            }
+            if (keyvalues.isEmpty()) {
+                return;
+            }
+            this.bloomPut(name, fields.keySet(), Level.Remote);
+            this.jedisTemplate.mbytes(keyvalues, ttl);
+            this.jedisTemplate.sadd(this.getRedisKeyOfStore(), name);
+            this.indexAdd(name, fields);
+            this.incrEpoch(name);
+        }
+        logger.debug("setAll > name:" + name + ",keys:" + values.size() + ",ttl:" + ttl + ",level:" + level);
+    }
+
+    //
+    // delAll
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 批量删除缓存值,并仅发送一条合并的同步命令
+     */
+    public void delAll(String name, Collection<String> keys) {
+        if (null == keys || keys.isEmpty()) {
+            return;
+        }
+        this.sendMdelCmd(name, Lists.newArrayList(keys));
+        this.delAll(name, keys, Level.Local);
+        this.delAll(name, keys, Level.Remote);
+    }
+
+    /**
+     * 批量删除缓存值(根据缓存层级)
+     */
+    protected void delAll(String name, Collection<String> keys, Level level) {
+        if (level.equals(Level.Local)) {
+            if (!localEnabled) {
+                return;
+            }
+            if (this.isStaleEnabled(name)) {
+                for (LocalEntry entry : this.localStore.getAll(name, keys).values()) {
+                    this.putStale(name, entry);
+                }
+            }
+            this.localStore.removeAll(name, keys);
+        } else {
+            List<String> deletekeys = Lists.newArrayList();
+            for (String key : keys) {
+                deletekeys.add(this.getRedisKeyOfElement(name, key));
+            }
+            this.jedisTemplate.mdel(deletekeys);
+            this.indexRem(name, keys);
+            this.incrEpoch(name);
+        }
+        logger.debug("delAll > name:" + name + ",keys:" + keys.size() + ",level:" + level);
+    }
+
     //
     // rem
     // ---------------------------------------------------------------------------------------------------
@@ -315,7 +873,9 @@ public class CacheTemplate implements InitializingBean {
      * 删除指定name下所有缓存
      */
     public void rem(String name) {
-        this.sendRemCmd(name);
+        // 代际模式下先递增代际号,本机立即切换,其他节点由同步命令切换,旧代际缓存值在返回前即不可见
+        long generation = this.generationEnabled ? this.incrGeneration(name) : 0;
+        this.sendRemCmd(name, generation);
         this.rem(name, Level.Local);
         this.rem(name, Level.Remote);
     }
@@ -324,14 +884,14 @@ public class CacheTemplate implements InitializingBean {
      * 删除指定name下所有缓存(根据缓存层级)
      */
     protected void rem(String name, Level level) {
+        this.registeredNames.remove(name);
         if (level.equals(Level.Local)) {
             if (!localEnabled) {
                 return;
             }
-            if (this.ehcaches.containsKey(name)) {
-                this.getEhcache(name).removeAll();
-                this.ehcaches.remove(name);
-            }
+            this.localStore.clear(name);
+            this.blooms.remove(name);
+            this.admissions.remove(name);
         } else {
             this.syncToRedis(name, Operator.REM);
         }
@@ -345,21 +905,25 @@ public class CacheTemplate implements InitializingBean {
      * 清除所有缓存
      */
     public void cls() {
+        // 先清理远程缓存(代际模式下递增所有缓存名称的代际号),其他节点收到同步命令后重新读取
+        this.cls(Level.Remote);
         this.sendClsCmd();
         this.cls(Level.Local);
-        this.cls(Level.Remote);
     }
 
     /**
      * 清除所有缓存(根据缓存层级)
      */
     protected void cls(Level level) {
+        this.registeredNames.clear();
         if (level.equals(Level.Local)) {
+            this.generations.clear();
             if (!localEnabled) {
                 return;
             }
-            this.cacheManager.clearAll();
-            this.ehcaches.clear();
+            this.localStore.clearAll();
+            this.blooms.clear();
+            this.admissions.clear();
         } else {
             syncToRedis(Operator.CLS);
         }
@@ -380,14 +944,9 @@ public class CacheTemplate implements InitializingBean {
             if (!localEnabled) {
                 return -1;
             }
-            if (this.ehcaches.containsKey(name)) {
-                Element element = this.getEhcache(name).get(key);
-                if (element != null) {
-                    ttl = element.getTimeToLive();
-                    if (ttl != 0) {
-                        ttl = ttl - (int) ((System.currentTimeMillis() - element.getCreationTime()) / 1000);
-                    }
-                }
+            LocalEntry entry = this.localStore.getQuiet(name, key);
+            if (entry != null) {
+                ttl = entry.getRemain(System.currentTimeMillis());
             }
         } else {
             ttl = this.jedisTemplate.ttl(this.getRedisKeyOfElement(name, key)).intValue();
@@ -404,10 +963,7 @@ public class CacheTemplate implements InitializingBean {
     public boolean exists(String name, String key, Level level) {
         boolean flag = false;
         if (level.equals(Level.Local)) {
-            if (this.ehcaches.containsKey(name)) {
-                Element element = this.getEhcache(name).get(key);
-                flag = element != null;
-            }
+            flag = localEnabled && this.localStore.getQuiet(name, key) != null;
         } else {
             flag = this.jedisTemplate.exists(this.getRedisKeyOfElement(name, key));
         }
@@ -471,6 +1027,14 @@ public class CacheTemplate implements InitializingBean {
      */
     public List<CacheData> getKeysData(String name) {
         List<CacheData> datas = Lists.newArrayList();
+        if (this.sortedIndexEnabled) {
+            // 剩余TTL由过期时间戳分值计算,无需逐个查询
+            long now = this.pruneSortedIndex(name);
+            for (Tuple tuple : this.jedisTemplate.zrangeByScoreWithScores(this.getRedisKeyOfSortedIndex(name), now, Double.POSITIVE_INFINITY)) {
+                datas.add(new CacheData(name, (String) tuple.getElement(), null, this.getIndexTtl(tuple.getScore(), now), Level.Remote));
+            }
+            return datas;
+        }
         Set<String> keys = this.keys(name);
         for (String key : keys) {
             datas.add(new CacheData(name, key, null, this.ttl(name, key, Level.Remote), Level.Remote));
@@ -489,7 +1053,14 @@ public class CacheTemplate implements InitializingBean {
                 for (String field : elements) {
                     keys.add(this.getRedisKeyOfElement(name, field));
                 }
-                return this.jedisTemplate.mget(keys);
+                List<E> values = Lists.newArrayList();
+                for (byte[] bytes : this.jedisTemplate.mbytes(keys)) {
+                    Object value = this.decodeValue(bytes);
+                    if (!(value instanceof Tombstone)) {
+                        values.add(this.<E> unwrap(value));
+                    }
+                }
+                return values;
             } else {
                 return Collections.emptyList();
             }
@@ -499,36 +1070,98 @@ public class CacheTemplate implements InitializingBean {
     }
 
     /**
-     * 获取name下所有缓存数量
-     */
-    public int size(String name) {
-        return this.getElements(name).size();
-    }
-
-    /**
-     * 获取name下所有缓存名称,以及其缓存Key
+     * 分页获取name下缓存Key,cursor首页为CachePage.FIRST
      */
-    public Map<String, Set<String>> stores() {
-        Map<String, Set<String>> cachemaps = Maps.newHashMap();
-        Set<String> caches = this.getCaches();
-        for (String cache : caches) {
-            cachemaps.put(cache, this.getElements(cache));
+    public CachePage<String> keys(String name, String cursor, int count) {
+        CachePage<CacheData> page = this.scanIndex(name, cursor, count);
+        List<String> keys = Lists.newArrayList();
+        for (CacheData data : page.getItems()) {
+            keys.add(data.getKey());
         }
-        return cachemaps;
+        return new CachePage<String>(page.getCursor(), keys);
     }
 
     /**
-     * 关闭
+     * 分页获取name下缓存Key及其相关信息
      */
-    public void shutdown() {
-        this.cacheManager.shutdown();
+    public CachePage<CacheData> getKeysData(String name, String cursor, int count) {
+        return this.scanIndex(name, cursor, count);
     }
 
-    //
-    // SyncToRedis
-    // ---------------------------------------------------------------------------------------------------
     /**
-     * 以如下数据格式同步单机缓存至全局Redis中保存.实现统一查询,抓取,删除等功能.
+     * 分页获取name下缓存值,每页一次MGET
+     */
+    public <E> CachePage<E> values(String name, String cursor, int count) {
+        try {
+            CachePage<CacheData> page = this.scanIndex(name, cursor, count);
+            List<E> values = Lists.newArrayList();
+            if (!page.getItems().isEmpty()) {
+                List<String> keys = Lists.newArrayList();
+                for (CacheData data : page.getItems()) {
+                    keys.add(this.getRedisKeyOfElement(name, data.getKey()));
+                }
+                for (byte[] bytes : this.jedisTemplate.mbytes(keys)) {
+                    Object value = this.decodeValue(bytes);
+                    if (value != null && !(value instanceof Tombstone)) {
+                        values.add(this.<E> unwrap(value));
+                    }
+                }
+            }
+            return new CachePage<E>(page.getCursor(), values);
+        } catch (Throwable t) {
+            throw new CacheException(t);
+        }
+    }
+
+    /**
+     * 获取name下所有缓存数量
+     */
+    public int size(String name) {
+        if (this.sortedIndexEnabled) {
+            return this.jedisTemplate.zcount(this.getRedisKeyOfSortedIndex(name), System.currentTimeMillis(), Double.POSITIVE_INFINITY).intValue();
+        }
+        return this.getElements(name).size();
+    }
+
+    /**
+     * 获取name下所有缓存名称,以及其缓存Key
+     */
+    public Map<String, Set<String>> stores() {
+        Map<String, Set<String>> cachemaps = Maps.newHashMap();
+        Set<String> caches = this.getCaches();
+        for (String cache : caches) {
+            cachemaps.put(cache, this.getElements(cache));
+        }
+        return cachemaps;
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        this.refreshExecutor.shutdownNow();
+        this.purgeExecutor.shutdownNow();
+        if (this.scheduledExecutor != null) {
+            this.scheduledExecutor.shutdownNow();
+        }
+        if (this.cacheSync instanceof RedisPubSubSync) {
+            ((RedisPubSubSync) this.cacheSync).shutdown();
+        } else if (this.cacheSync instanceof RedisStreamSync) {
+            ((RedisStreamSync) this.cacheSync).shutdown();
+        }
+        if (this.localStore instanceof PersistentLocalStore) {
+            this.saveLocal();
+        }
+        if (this.localStore != null) {
+            this.localStore.shutdown();
+        }
+    }
+
+    //
+    // SyncToRedis
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 以如下数据格式同步单机缓存至全局Redis中保存.实现统一查询,抓取,删除等功能.
      * (类似Ehcache:Cache.Element.Value)
      * smart:cache:store
      * - user
@@ -539,16 +1172,24 @@ public class CacheTemplate implements InitializingBean {
      * smart:cache:store:user:Terry
      */
     private void syncToRedis(String name, String field, Object value, int timeToLiveSeconds, Operator operator) {
-        if (operator.equals(Operator.SET)) {
+        if (operator.equals(Operator.SET) && null != value) {
+            // 先记录布隆过滤器,再写入缓存值,避免其他节点读到值前被过滤
+            this.bloomPut(name, Collections.singletonList(field), Level.Remote);
+        }
+        if (this.scriptEnabled && (operator.equals(Operator.SET) || operator.equals(Operator.DEL))) {
+            this.scriptToRedis(name, field, value, timeToLiveSeconds, operator);
+        }
+        // Operator.SET
+        else if (operator.equals(Operator.SET)) {
             int ttl = 0;
             ttl = Optional.fromNullable(timeToLiveSeconds).or(ttl);
             // 存入
             // smart:cache:store:user:John
             // smart:cache:store:user:Terry
             if (ttl == 0) {
-                this.jedisTemplate.set(this.getRedisKeyOfElement(name, field), value);
+                this.jedisTemplate.bytes(this.getRedisKeyOfElement(name, field), this.encodeValue(value, ttl));
             } else {
-                this.jedisTemplate.set(this.getRedisKeyOfElement(name, field), value, ttl);
+                this.jedisTemplate.bytes(this.getRedisKeyOfElement(name, field), this.encodeValue(value, ttl), ttl);
             }
             // 创建数据结构
             // 存入
@@ -559,37 +1200,39 @@ public class CacheTemplate implements InitializingBean {
             // smart:cache:store:user
             // - John
             // - Terry
-            this.jedisTemplate.hset(this.getRedisKeyOfCache(name), field, timeToLiveSeconds);
+            this.indexAdd(name, Collections.singletonMap(field, timeToLiveSeconds));
+            this.incrEpoch(name);
         }
         // Operator.DEL
         else if (operator.equals(Operator.DEL)) {
             this.jedisTemplate.del(this.getRedisKeyOfElement(name, field)); // 删除 smart:cache:store:user:John
-            this.jedisTemplate.hdel(this.getRedisKeyOfCache(name), field); // 删除 smart:cache:store:user.John
+            this.indexRem(name, Collections.singletonList(field)); // 删除 smart:cache:store:user.John
+            this.incrEpoch(name);
         }
         // Operator.REM
         else if (operator.equals(Operator.REM)) {
-            Set<String> storefields = this.jedisTemplate.hkeys(this.getRedisKeyOfCache(name)); // 获取 smart:cache:store:user 所有 field
-            List<String> deletekeys = Lists.newArrayList();
-            for (String storefield : storefields) {
-                deletekeys.add(this.getRedisKeyOfElement(name, storefield));// 依次取Key,并记录到要删除key列表
+            // 将 smart:cache:store:user 重命名为快照,由后台分批删除缓存值.代际模式下rem已递增代际号,清理上一代际
+            long generation = this.getGeneration(name);
+            this.purge(name, this.generationEnabled ? generation - 1 : generation);
+            if (this.bloomConfigs.containsKey(name)) {
+                this.jedisTemplate.del(this.getRedisKeyOfBloom(name)); // 重置布隆过滤器
             }
-            deletekeys.add(this.getRedisKeyOfCache(name)); // 将 smart:cache:store:user,记录到要删除key列表
-            this.jedisTemplate.mdel(deletekeys);// 批量删除
             this.jedisTemplate.srem(this.getRedisKeyOfStore(), name);// 删除 smart:cache:store:user
+            this.incrEpoch(name);
         }
         // Operator.CLS
         else if (operator.equals(Operator.CLS)) {
-            Set<String> caches = this.getCaches();  // 获取 smart:cache:store 里所有 cache
-            List<String> deletekeys = Lists.newArrayList();
+            Set<String> caches = this.jedisTemplate.smembers(this.getRedisKeyOfStore());  // 获取 smart:cache:store 里所有 cache
             for (String cache : caches) {
-                Set<String> storefields = this.getElementsWithOutExpireCheck(cache); // 获取 smart:cache:store:user 所有 field
-                for (String storefield : storefields) {
-                    deletekeys.add(this.getRedisKeyOfElement(cache, storefield));// 依次取Key,并记录到要删除key列表
-                }
-                deletekeys.add(this.getRedisKeyOfCache(cache)); // 将smart:cache:store:user,记录到要删除key列表
+                this.purge(cache, this.generationEnabled ? this.incrGeneration(cache) - 1 : 0);
+            }
+            List<String> deletekeys = Lists.newArrayList();
+            for (String bloom : this.bloomConfigs.keySet()) {
+                deletekeys.add(this.getRedisKeyOfBloom(bloom)); // 重置布隆过滤器
             }
             deletekeys.add(this.getRedisKeyOfStore());
             this.jedisTemplate.mdel(deletekeys);
+            this.incrEpoch(null);
         }
         //
         else {
@@ -613,6 +1256,243 @@ public class CacheTemplate implements InitializingBean {
         this.syncToRedis(name, field, value, 0, operator);
     }
 
+    /**
+     * 以Lua脚本单次往返完成SET/DEL:写值,维护smart:cache:store与smart:cache:store:user,并发布同步命令.
+     * 集群模式下smart:cache:store不在同一slot,改为每个缓存名称在本机首次写入时单独登记.
+     */
+    private void scriptToRedis(String name, String field, Object value, int timeToLiveSeconds, Operator operator) {
+        boolean cluster = this.jedisTemplate.isCluster();
+        List<byte[]> keys = Lists.newArrayList();
+        keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfElement(name, field)));
+        keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfIndex(name)));
+        List<byte[]> args = Lists.newArrayList();
+        if (this.isScriptSync()) {
+            Command command = operator.equals(Operator.SET) && this.setCmdEnabled ? Command.set(name, field) : Command.del(name, field);
+            args.add(this.jedisTemplate.serializeKey(Cache.CACHE_STORE_SYNC));
+            args.add(((RedisPubSubSync) this.cacheSync).encode(command));
+        } else {
+            args.add(new byte[0]);
+            args.add(new byte[0]);
+        }
+        args.add(this.getIndexField(field));
+        if (operator.equals(Operator.SET)) {
+            if (null == value) {
+                return;
+            }
+            if (!cluster) {
+                keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfStore()));
+            }
+            args.add(this.encodeValue(value, timeToLiveSeconds));
+            args.add(SafeEncoder.encode(String.valueOf(timeToLiveSeconds)));
+            args.add(this.getIndexValue(timeToLiveSeconds));
+            args.add(this.jedisTemplate.serializeVal(name));
+            args.add(this.getIndexType());
+            this.addVersion(name, keys, args);
+            this.addEpoch(name, keys, args, this.isScriptSync());
+            this.jedisTemplate.evalsha(CacheScripts.SET, keys, args);
+            if (cluster && this.registeredNames.add(name)) {
+                this.jedisTemplate.sadd(this.getRedisKeyOfStore(), name);
+            }
+        } else {
+            args.add(this.getIndexType());
+            this.addVersion(name, keys, args);
+            this.addEpoch(name, keys, args, this.isScriptSync());
+            this.jedisTemplate.evalsha(CacheScripts.DEL, keys, args);
+        }
+    }
+
+    /**
+     * 以Lua脚本单次往返完成原子写入:条件判断,写值,维护smart:cache:store与smart:cache:store:user,并发布同步命令.
+     * 集群模式下仅当缓存Key以{name}作为hash tag(scriptEnabled)时,索引才随脚本写入,否则于afterAtomicWrite中补充
+     * KEYS: element, [cache], [store], [version], [epoch]
+     * ARGV: channel, command, field, value, ttl, ttlValue, storeName, indexType, extras..., ['version'], ['epoch']
+     */
+    private Object atomicToRedis(String script, String name, String field, byte[] value, int timeToLiveSeconds, byte[]... extras) {
+        boolean cluster = this.jedisTemplate.isCluster();
+        List<byte[]> keys = Lists.newArrayList();
+        keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfElement(name, field)));
+        if (!cluster || this.scriptEnabled) {
+            keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfIndex(name)));
+        }
+        if (!cluster) {
+            keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfStore()));
+        }
+        List<byte[]> args = Lists.newArrayList();
+        if (this.isScriptPublish()) {
+            Command command = this.setCmdEnabled ? Command.set(name, field) : Command.del(name, field);
+            args.add(this.jedisTemplate.serializeKey(Cache.CACHE_STORE_SYNC));
+            args.add(((RedisPubSubSync) this.cacheSync).encode(command));
+        } else {
+            args.add(new byte[0]);
+            args.add(new byte[0]);
+        }
+        args.add(this.getIndexField(field));
+        args.add(value);
+        args.add(SafeEncoder.encode(String.valueOf(timeToLiveSeconds)));
+        args.add(this.getIndexValue(timeToLiveSeconds));
+        args.add(this.jedisTemplate.serializeVal(name));
+        args.add(this.getIndexType());
+        for (byte[] extra : extras) {
+            args.add(extra);
+        }
+        if (!cluster || this.scriptEnabled) {
+            this.addVersion(name, keys, args);
+            this.addEpoch(name, keys, args, this.isScriptPublish());
+        }
+        return this.jedisTemplate.evalsha(script, keys, args);
+    }
+
+    /**
+     * 原子写入成功后:补充集群模式下的索引,设置本地缓存,脚本未发布时发送同步命令
+     */
+    private void afterAtomicWrite(String name, String field, Object value, int timeToLiveSeconds) {
+        if (this.jedisTemplate.isCluster()) {
+            if (!this.scriptEnabled) {
+                this.indexAdd(name, Collections.singletonMap(field, timeToLiveSeconds));
+                this.incrEpoch(name);
+            }
+            if (this.registeredNames.add(name)) {
+                this.jedisTemplate.sadd(this.getRedisKeyOfStore(), name);
+            }
+        }
+        if (localEnabled) {
+            this.set(name, field, value, timeToLiveSeconds, Level.Local);
+            if (!this.isScriptPublish()) {
+                if (this.setCmdEnabled) {
+                    this.sendSetCmd(name, field);
+                } else {
+                    this.sendDelCmd(name, field);
+                }
+            }
+        }
+    }
+
+    /**
+     * 同步命令是否由写入脚本发布
+     */
+    private boolean isScriptSync() {
+        return this.scriptEnabled && this.isScriptPublish();
+    }
+
+    /**
+     * 同步命令能否由脚本发布,合并发送时由CommandBatcher发布
+     */
+    private boolean isScriptPublish() {
+        return this.localEnabled && this.cacheSync instanceof RedisPubSubSync && this.syncBatchWindowMillis <= 0;
+    }
+
+    //
+    // encode & decode
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 序列化缓存值,启用封装时附带版本号与过期时间
+     */
+    private byte[] encodeValue(Object value, int ttl) {
+        byte[] payload = value instanceof Tombstone ? Tombstone.marker() : this.jedisTemplate.serializeVal(value);
+        if (!this.envelopeEnabled) {
+            return payload;
+        }
+        return CacheEnvelope.encode(payload, System.currentTimeMillis(), CacheEnvelope.expireAt(ttl));
+    }
+
+    /**
+     * 反序列化缓存值,兼容封装与未封装格式
+     */
+    private Object decodeValue(byte[] bytes) {
+        CacheEnvelope envelope = CacheEnvelope.decode(bytes);
+        if (envelope != null) {
+            return this.decodePayload(envelope.getPayload());
+        }
+        return this.decodePayload(bytes);
+    }
+
+    /**
+     * 反序列化缓存值,空值标记返回Tombstone.INSTANCE
+     */
+    private Object decodePayload(byte[] bytes) {
+        if (Tombstone.isMarker(bytes)) {
+            return Tombstone.INSTANCE;
+        }
+        return this.jedisTemplate.deserializeVal(bytes);
+    }
+
+    /**
+     * 空值标记转换为null
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T unwrap(Object value) {
+        if (value instanceof Tombstone) {
+            this.stats.recordTombstoneHit();
+            return null;
+        }
+        return (T) value;
+    }
+
+    /**
+     * 读取远程缓存值及其ttl,不存在返回null.
+     * 封装格式由过期时间戳计算ttl,未封装格式需再查询一次TTL
+     */
+    private CacheData getRemoteData(String name, String key) {
+        byte[] bytes = this.jedisTemplate.bytes(this.getRedisKeyOfElement(name, key));
+        if (bytes == null) {
+            return null;
+        }
+        CacheData data;
+        CacheEnvelope envelope = CacheEnvelope.decode(bytes);
+        if (envelope != null) {
+            data = new CacheData(name, key, this.decodePayload(envelope.getPayload()), envelope.ttl(), Level.Remote);
+            data.setVersion(envelope.getVersion());
+        } else {
+            data = new CacheData(name, key, this.decodePayload(bytes), this.ttl(name, key, Level.Remote), Level.Remote);
+        }
+        if (data.getValue() == null) {
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * 批量读取远程缓存值及其ttl,仅返回存在的key.
+     * 封装格式由过期时间戳计算ttl,未封装格式再以一次pipeline批量查询TTL
+     */
+    private Map<String, CacheData> getRemoteAll(String name, Collection<String> keys) {
+        List<String> fields = Lists.newArrayList(keys);
+        List<String> redisKeys = Lists.newArrayList();
+        for (String field : fields) {
+            redisKeys.add(this.getRedisKeyOfElement(name, field));
+        }
+        List<byte[]> values = this.jedisTemplate.mbytes(redisKeys);
+        Map<String, CacheData> datas = Maps.newLinkedHashMap();
+        List<CacheData> legacies = Lists.newArrayList();
+        List<String> legacyKeys = Lists.newArrayList();
+        for (int i = 0; i < fields.size(); i++) {
+            byte[] bytes = values.get(i);
+            if (bytes == null) {
+                continue;
+            }
+            CacheData data;
+            CacheEnvelope envelope = CacheEnvelope.decode(bytes);
+            if (envelope != null) {
+                data = new CacheData(name, fields.get(i), this.decodePayload(envelope.getPayload()), envelope.ttl(), Level.Remote);
+                data.setVersion(envelope.getVersion());
+            } else {
+                data = new CacheData(name, fields.get(i), this.decodePayload(bytes), -1, Level.Remote);
+                legacies.add(data);
+                legacyKeys.add(redisKeys.get(i));
+            }
+            if (data.getValue() != null) {
+                datas.put(data.getKey(), data);
+            }
+        }
+        if (!legacyKeys.isEmpty()) {
+            List<Long> ttls = this.jedisTemplate.mttl(legacyKeys);
+            for (int i = 0; i < legacies.size(); i++) {
+                legacies.get(i).setTtl(ttls.get(i).intValue());
+            }
+        }
+        return datas;
+    }
+
     //
     // send
     // ---------------------------------------------------------------------------------------------------
@@ -622,7 +1502,7 @@ public class CacheTemplate implements InitializingBean {
     private void sendSetCmd(String name, String key) {
         if (localEnabled) {
             Command c = Command.set(name, key);
-            cacheSync.sendCommand(c);
+            this.sendCommand(c);
             logger.debug("sendSetCmd > " + "name:" + name + ",key:" + key);
         }
     }
@@ -633,22 +1513,54 @@ public class CacheTemplate implements InitializingBean {
     private void sendDelCmd(String name, String key) {
         if (localEnabled) {
             Command c = Command.del(name, key);
-            cacheSync.sendCommand(c);
+            this.sendCommand(c);
             logger.debug("sendDelCmd > " + "name:" + name + ",key:" + key);
         }
     }
 
+    /**
+     * 发送批量新增缓存命令
+     */
+    private void sendMsetCmd(String name, List<String> keys) {
+        if (localEnabled) {
+            Command c = Command.mset(name, keys);
+            this.sendCommand(c);
+            logger.debug("sendMsetCmd > " + "name:" + name + ",keys:" + keys.size());
+        }
+    }
+
+    /**
+     * 发送批量删除缓存命令
+     */
+    private void sendMdelCmd(String name, List<String> keys) {
+        if (localEnabled) {
+            Command c = Command.mdel(name, keys);
+            this.sendCommand(c);
+            logger.debug("sendMdelCmd > " + "name:" + name + ",keys:" + keys.size());
+        }
+    }
+
     /**
      * 发送移除缓存命令
      */
-    private void sendRemCmd(String name) {
+    private void sendRemCmd(String name, long generation) {
         if (localEnabled) {
-            Command c = Command.rem(name);
-            cacheSync.sendCommand(c);
+            Command c = Command.rem(name, generation);
+            this.sendCommand(c);
             logger.debug("sendRemCmd > " + "name:" + name);
         }
     }
 
+    /**
+     * 发送同步命令后递增失效纪元,使心跳确认的纪元不早于对应命令的发布.合并发送时由sendBatch在发布后递增
+     */
+    private void sendCommand(Command c) {
+        this.cacheSync.sendCommand(c);
+        if (!(this.cacheSync instanceof RedisPubSubSync && ((RedisPubSubSync) this.cacheSync).getBatcher() != null)) {
+            this.incrEpochs(Command.OPT_CLS == c.oper ? Collections.<String> emptySet() : Collections.singleton(c.name), Command.OPT_CLS == c.oper);
+        }
+    }
+
     /**
      * 发送多机获取本地缓存命令
      */
@@ -666,7 +1578,7 @@ public class CacheTemplate implements InitializingBean {
     private void sendClsCmd() {
         if (localEnabled) {
             Command c = Command.cls();
-            cacheSync.sendCommand(c);
+            this.sendCommand(c);
             logger.debug("sendClsCmd");
         }
     }
@@ -675,102 +1587,1175 @@ public class CacheTemplate implements InitializingBean {
     // private
     // ---------------------------------------------------------------------------------------------------
     /**
-     * 创建本地缓存
+     * 加载缓存值.以name,key为标识登记FutureTask,首个线程执行加载,其余线程等待同一结果.
+     * loader返回null时不写入缓存
      */
-    private Ehcache getEhcache(final String name) {
-        Future<Ehcache> future = this.ehcaches.get(name);
+    @SuppressWarnings("unchecked")
+    private <T> T load(final String name, final String key, final int ttl, final Callable<T> loader) {
+        String id = name + spliter + key;
+        Future<Object> future = this.loadings.get(id);
         if (future == null) {
-            Callable<Ehcache> callable = new Callable<Ehcache>() {
+            Callable<Object> callable = new Callable<Object>() {
                 @Override
-                public Ehcache call() throws Exception {
-                    Ehcache cache = cacheManager.getEhcache(name);
-                    if (cache == null) {
-                        cacheManager.addCache(name);
-                        cache = cacheManager.getEhcache(name);
+                public Object call() throws Exception {
+                    // 获得加载权后再次检查缓存,避免上一轮加载刚完成写入时重复加载
+                    Object value = lookup(name, key);
+                    if (value != null) {
+                        return unwrap(value);
+                    }
+                    // 启用加载租约时,仅获得租约的节点执行加载
+                    LeaseConfig lease = getLeaseConfig(name);
+                    boolean leased = false;
+                    if (lease != null) {
+                        leased = jedisTemplate.setnx(getRedisKeyOfLease(name, key), Cache.ID, lease.getLeaseMillis());
+                        if (leased) {
+                            stats.recordLeaseAcquired();
+                        } else {
+                            value = awaitLease(name, key, lease);
+                            if (value != null) {
+                                return unwrap(value);
+                            }
+                            // 等待超时或租约持有者未写入,自行加载
+                        }
+                    }
+                    try {
+                        return loadAndSet(name, key, ttl, loader);
+                    } finally {
+                        if (leased) {
+                            releaseLease(name, key);
+                        }
                     }
-                    return cache;
                 }
             };
-            FutureTask<Ehcache> task = new FutureTask<>(callable);
-            future = this.ehcaches.putIfAbsent(name, task);
+            FutureTask<Object> task = new FutureTask<>(callable);
+            future = this.loadings.putIfAbsent(id, task);
             if (future == null) {
                 future = task;
-                task.run();
+                try {
+                    task.run();
+                } finally {
+                    this.loadings.remove(id, task);
+                }
+            } else {
+                this.stats.recordLoadCoalesced();
             }
+        } else {
+            this.stats.recordLoadCoalesced();
         }
         try {
-            return future.get();
-        } catch (Exception e) {
-            this.ehcaches.remove(name);
+            return (T) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new CacheException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheException(cause);
         }
     }
 
-    private Set<String> getCaches() {
-        Set<String> caches = Sets.newHashSet();
-        Set<String> memebers = this.jedisTemplate.smembers(this.getRedisKeyOfStore());
-        List<String> deletes = Lists.newArrayList();
-        for (String memeber : memebers) {
-            int ttl = this.jedisTemplate.ttl(this.getRedisKeyOfCache(memeber)).intValue();
-            if (ttl < 0) {
-                deletes.add(memeber);
-                this.jedisTemplate.srem(this.getRedisKeyOfStore(), memeber);
-                continue;
+    /**
+     * 执行loader并写入缓存,记录加载耗时
+     */
+    private Object loadAndSet(String name, String key, int ttl, Callable<?> loader) throws Exception {
+        Object value;
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            value = loader.call();
+            success = true;
+        } finally {
+            long millis = System.currentTimeMillis() - start;
+            if (success) {
+                this.stats.recordLoad(millis);
+                this.recordLoadCost(name, millis);
+            } else {
+                this.stats.recordLoadFailure(millis);
             }
-            caches.add(memeber);
         }
-        return caches;
-    }
-
-    private Set<String> getElements(String cache) {
-        Set<String> elements = Sets.newHashSet();
-        Map<String, Integer> cachefields = this.jedisTemplate.hgetAll(this.getRedisKeyOfCache(cache));
-        List<String> deletes = Lists.newArrayList();
-        for (String field : cachefields.keySet()) {
-            Integer data = cachefields.get(field);
-            if (data > 0) {
-                int ttl = this.jedisTemplate.ttl(this.getRedisKeyOfElement(cache, field)).intValue();
-                if (ttl < 0) {
-                    // 若已失效
-                    this.del(cache, field);
-                    deletes.add(this.getRedisKeyOfCache(cache));
-                    continue;
-                }
+        if (value != null) {
+            if (ttl > 0) {
+                this.set(name, key, value, ttl);
+            } else {
+                this.set(name, key, value);
             }
-            elements.add(field);
+        } else if (this.tombstoneEnabled) {
+            // 加载结果为null时写入空值标记,避免不存在的key反复穿透至数据源
+            this.setTombstone(name, key);
         }
-        this.jedisTemplate.mdel(deletes);
-        return elements;
-    }
-
-    private Set<String> getElementsWithOutExpireCheck(String cache) {
-        return this.jedisTemplate.hkeys(this.getRedisKeyOfCache(cache));
+        return value;
     }
 
     //
-    // private getRedisKeyOf
+    // refresh ahead
     // ---------------------------------------------------------------------------------------------------
-    private String getRedisKeyOfStore() {
-        return Cache.CACHE_STORE;
+    /**
+     * 获取缓存名称的提前刷新系数,未启用返回0
+     */
+    private double getRefreshBeta(String name) {
+        Double beta = this.refreshBetas.get(name);
+        if (beta == null && this.refreshAheadEnabled) {
+            beta = this.refreshBeta;
+        }
+        return beta == null ? 0 : beta;
     }
 
-    private String getRedisKeyOfCache(String name) {
-        return Cache.CACHE_STORE + spliter + name;
+    /**
+     * 以指数加权移动平均记录缓存名称的加载耗时
+     */
+    private void recordLoadCost(String name, long millis) {
+        Double cost = this.loadCosts.get(name);
+        this.loadCosts.put(name, cost == null ? millis : cost + REFRESH_COST_ALPHA * (millis - cost));
     }
 
-    private String getRedisKeyOfElement(String name, String key) {
-        return Cache.CACHE_STORE + spliter + name + spliter + key;
+    /**
+     * XFetch提前刷新:剩余时间越短,加载耗时越长,越可能在后台提前刷新.
+     * 满足 -cost * beta * ln(random) >= 剩余时间 时触发.
+     * 剩余时间取自本地缓存,仅当本地ttl与远程ttl一致(即小于本地缓存过期时间)时判断
+     */
+    private void refreshAhead(final String name, final String key, final int ttl, final Callable<?> loader) {
+        double beta = this.getRefreshBeta(name);
+        if (beta <= 0 || !this.isLocalEnabled(name)) {
+            return;
+        }
+        Double cost = this.loadCosts.get(name);
+        if (cost == null) {
+            return;
+        }
+        LocalEntry entry = this.localStore.getQuiet(name, key);
+        if (entry == null || entry.getTtl() == 0 || entry.getTtl() >= this.getLocalTtl(name)) {
+            return;
+        }
+        long remain = entry.getExpirationTime() - System.currentTimeMillis();
+        if (-cost * beta * Math.log(ThreadLocalRandom.current().nextDouble()) < remain) {
+            return;
+        }
+        final String id = name + spliter + key;
+        if (this.loadings.containsKey(id)) {
+            return;
+        }
+        Callable<Object> callable = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                // 启用加载租约时,未获得租约说明其他节点正在加载,放弃本次刷新
+                LeaseConfig lease = getLeaseConfig(name);
+                if (lease != null && !jedisTemplate.setnx(getRedisKeyOfLease(name, key), Cache.ID, lease.getLeaseMillis())) {
+                    return null;
+                }
+                try {
+                    return loadAndSet(name, key, ttl, loader);
+                } finally {
+                    if (lease != null) {
+                        releaseLease(name, key);
+                    }
+                }
+            }
+        };
+        final FutureTask<Object> task = new FutureTask<>(callable);
+        if (this.loadings.putIfAbsent(id, task) != null) {
+            return;
+        }
+        try {
+            this.refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        task.get();
+                    } catch (Exception e) {
+                        logger.warn("refreshAhead > name:" + name + ",key:" + key, e);
+                    } finally {
+                        loadings.remove(id, task);
+                    }
+                }
+            });
+            this.stats.recordRefresh();
+        } catch (RejectedExecutionException e) {
+            // 刷新队列已满,放弃本次刷新
+            this.loadings.remove(id, task);
+        }
     }
 
     //
-    // getter & setter
+    // bloom
     // ---------------------------------------------------------------------------------------------------
-    public String getKey() {
-        return key;
-    }
-
-    public void setKey(String key) {
-        this.key = key;
+    /**
+     * 获取缓存名称的布隆过滤器本地快照,未配置返回null.首次使用时从Redis加载
+     */
+    private CacheBloom getBloom(String name) {
+        BloomConfig config = this.bloomConfigs.get(name);
+        if (config == null) {
+            return null;
+        }
+        CacheBloom bloom = this.blooms.get(name);
+        if (bloom == null) {
+            CacheBloom created = new CacheBloom(config.getExpectedInsertions(), config.getFpp());
+            created.merge(this.jedisTemplate.bytes(this.getRedisKeyOfBloom(name)));
+            bloom = this.blooms.putIfAbsent(name, created);
+            if (bloom == null) {
+                bloom = created;
+            }
+        }
+        return bloom;
+    }
+
+    /**
+     * 记录key至布隆过滤器(根据缓存层级).Remote时同时以一次脚本调用写入Redis位图
+     */
+    protected void bloomPut(String name, Collection<String> keys, Level level) {
+        CacheBloom bloom = this.getBloom(name);
+        if (bloom == null || null == keys || keys.isEmpty()) {
+            return;
+        }
+        List<byte[]> args = Lists.newArrayList();
+        for (String key : keys) {
+            bloom.put(key);
+            if (level.equals(Level.Remote)) {
+                for (long offset : bloom.offsets(key)) {
+                    args.add(SafeEncoder.encode(String.valueOf(offset)));
+                }
+            }
+        }
+        if (!args.isEmpty()) {
+            List<byte[]> bloomKeys = Lists.newArrayList(this.jedisTemplate.serializeKey(this.getRedisKeyOfBloom(name)));
+            this.jedisTemplate.evalsha(CacheScripts.BLOOM_ADD, bloomKeys, args);
+        }
+    }
+
+    /**
+     * 确认本地快照中不存在的key.同步命令能及时更新快照(订阅已连接,心跳未滞后,命令未合并延迟发送)时以快照为准;
+     * 否则其他节点的写入可能尚未合并至快照,以一次脚本调用检查Redis位图,已置位的key补记至快照
+     */
+    private Set<String> bloomMissing(String name, CacheBloom bloom, List<String> keys) {
+        if (keys.isEmpty() || this.isBloomCurrent()) {
+            return Sets.newHashSet(keys);
+        }
+        List<byte[]> args = Lists.newArrayList(SafeEncoder.encode(String.valueOf(bloom.getNumHashFunctions())));
+        for (String key : keys) {
+            for (long offset : bloom.offsets(key)) {
+                args.add(SafeEncoder.encode(String.valueOf(offset)));
+            }
+        }
+        List<byte[]> bloomKeys = Lists.newArrayList(this.jedisTemplate.serializeKey(this.getRedisKeyOfBloom(name)));
+        List<?> found = (List<?>) this.jedisTemplate.evalsha(CacheScripts.BLOOM_TEST, bloomKeys, args);
+        Set<String> missing = Sets.newHashSet();
+        for (int i = 0; i < keys.size(); i++) {
+            if (Long.valueOf(1).equals(found.get(i))) {
+                bloom.put(keys.get(i));
+            } else {
+                missing.add(keys.get(i));
+            }
+        }
+        return missing;
+    }
+
+    private boolean isBloomCurrent() {
+        return this.isScriptPublish() && CacheStats.SYNC_CONNECTED.equals(this.stats.getSyncState());
+    }
+
+    /**
+     * 以smart:cache:store:user中现有的key重建布隆过滤器,并替换Redis位图与本地快照.
+     * 其他节点的本地快照在定时刷新时合并新位图,已删除key的位在其重新加载快照(rem或重启)后清除
+     */
+    public void rebuildBloom(String name) {
+        BloomConfig config = this.bloomConfigs.get(name);
+        if (config == null) {
+            return;
+        }
+        CacheBloom bloom = new CacheBloom(config.getExpectedInsertions(), config.getFpp());
+        for (String key : this.getElementsWithOutExpireCheck(name)) {
+            bloom.put(key);
+        }
+        byte[] bits = bloom.getBits();
+        if (bits.length == 0) {
+            this.jedisTemplate.del(this.getRedisKeyOfBloom(name));
+        } else {
+            this.jedisTemplate.bytes(this.getRedisKeyOfBloom(name), bits);
+        }
+        this.blooms.put(name, bloom);
+        logger.debug("rebuildBloom > name:" + name + ",bytes:" + bits.length);
+    }
+
+    /**
+     * 定时以Redis位图刷新本地快照
+     */
+    private void refreshBlooms() {
+        for (Map.Entry<String, CacheBloom> entry : this.blooms.entrySet()) {
+            try {
+                entry.getValue().merge(this.jedisTemplate.bytes(this.getRedisKeyOfBloom(entry.getKey())));
+            } catch (Exception e) {
+                logger.warn("refreshBlooms > name:" + entry.getKey(), e);
+            }
+        }
+    }
+
+    //
+    // lease
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 获取缓存名称的加载租约配置,未启用返回null
+     */
+    private LeaseConfig getLeaseConfig(String name) {
+        LeaseConfig config = this.leaseConfigs.get(name);
+        if (config == null && this.leaseEnabled) {
+            config = this.leaseConfig;
+        }
+        return config;
+    }
+
+    /**
+     * 未获得租约时,优先返回旧值,否则在等待时间内轮询远程缓存,直至租约持有者写入或释放租约.
+     * 空值标记返回Tombstone.INSTANCE,超时返回null
+     */
+    private Object awaitLease(String name, String key, LeaseConfig lease) {
+        LocalEntry stale = this.stales.getIfPresent(name + spliter + key);
+        if (stale != null && System.currentTimeMillis() - stale.getCreationTime() <= lease.getStaleSeconds() * 1000L) {
+            this.stats.recordStaleServed();
+            return this.fromLocal(stale.getValue());
+        }
+        this.stats.recordLeaseWait();
+        long deadline = System.currentTimeMillis() + lease.getWaitMillis();
+        long remain;
+        while ((remain = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(Math.min(LEASE_POLL_MILLIS, remain));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Object value = this.lookup(name, key, Level.Remote);
+            if (value != null) {
+                return value;
+            }
+            if (!this.jedisTemplate.exists(this.getRedisKeyOfLease(name, key))) {
+                // 租约已释放,持有者加载失败或加载结果为null
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 释放加载租约,仅删除本节点持有的租约
+     */
+    private void releaseLease(String name, String key) {
+        try {
+            List<byte[]> keys = Lists.newArrayList(this.jedisTemplate.serializeKey(this.getRedisKeyOfLease(name, key)));
+            List<byte[]> args = Lists.newArrayList(this.jedisTemplate.serializeVal(Cache.ID));
+            this.jedisTemplate.evalsha(CacheScripts.RELEASE_LEASE, keys, args);
+        } catch (Exception e) {
+            // 释放失败时租约到期后自动失效
+            logger.warn("releaseLease > name:" + name + ",key:" + key, e);
+        }
+    }
+
+    private boolean isStaleEnabled(String name) {
+        LeaseConfig config = this.getLeaseConfig(name);
+        return config != null && config.getStaleSeconds() > 0;
+    }
+
+    private void putStale(String name, LocalEntry entry) {
+        if (entry != null && entry.getValue() != null) {
+            this.stales.put(name + spliter + entry.getKey(), new LocalEntry(entry.getKey(), entry.getValue(), 0));
+        }
+    }
+
+    /**
+     * 创建本地缓存元素,ttl规则与set(name, key, value, ttl, Level.Local)一致.ttl小于0或value为null时返回null
+     */
+    private LocalEntry newEntry(String name, String key, Object value, int ttl) {
+        return this.newEntry(name, key, value, ttl, 0);
+    }
+
+    /**
+     * 创建本地缓存元素并记录远程缓存值的版本号
+     */
+    private LocalEntry newEntry(String name, String key, Object value, int ttl, long version) {
+        if (ttl < 0 || value == null) {
+            return null;
+        } else if (ttl == 0) {
+            return new LocalEntry(key, this.toLocal(name, value), this.getLocalTtl(name), System.currentTimeMillis(), version);
+        } else {
+            // 当设置的ttl时间大于本地默认的缓存TTL,则使用本地默认的TTL,即缓存名称的本地过期时间.反之亦然.
+            int localTtl = this.getLocalTtl(name);
+            ttl = ttl < localTtl ? ttl : localTtl;
+            return new LocalEntry(key, this.toLocal(name, value), ttl, System.currentTimeMillis(), version);
+        }
+    }
+
+    /**
+     * 按复制策略转换写入本地缓存的值.空值标记为单例,不复制
+     */
+    private Object toLocal(String name, Object value) {
+        if (value == null || value == Tombstone.INSTANCE || this.getCopyPolicy(name) == CopyPolicy.IDENTITY) {
+            return value;
+        }
+        return new LocalBytes(this.jedisTemplate.serializeVal(value));
+    }
+
+    /**
+     * 转换从本地缓存读取的值.以字节保存的值反序列化返回,与当前策略无关
+     */
+    private Object fromLocal(Object value) {
+        if (value instanceof LocalBytes) {
+            return this.jedisTemplate.deserializeVal(((LocalBytes) value).getBytes());
+        }
+        return value;
+    }
+
+    private CopyPolicy getCopyPolicy(String name) {
+        CopyPolicy policy = this.localCopyPolicies.get(name);
+        return policy == null ? this.localCopyPolicy : policy;
+    }
+
+    /**
+     * 获取name的本地缓存配置,未配置返回null
+     */
+    public LocalConfig getLocalConfig(String name) {
+        return this.localConfigs.get(name);
+    }
+
+    /**
+     * 运行时修改name的本地缓存配置,config为null时恢复全局设置.
+     * 过期时间对此后写入的元素生效,容量与淘汰策略由LocalStore即时调整,禁用时清除name已有的本地缓存
+     */
+    public void setLocalConfig(String name, LocalConfig config) {
+        if (config == null) {
+            this.localConfigs.remove(name);
+        } else {
+            this.localConfigs.put(name, config);
+        }
+        if (this.localStore != null) {
+            this.localStore.configure(name, config);
+            if (config != null && !config.isEnabled()) {
+                this.localStore.clear(name);
+            }
+        }
+        logger.info("setLocalConfig > name:" + name + ",config:" + config);
+    }
+
+    /**
+     * name是否使用本地缓存
+     */
+    private boolean isLocalEnabled(String name) {
+        if (!this.localEnabled) {
+            return false;
+        }
+        LocalConfig config = this.localConfigs.get(name);
+        return config == null || config.isEnabled();
+    }
+
+    /**
+     * 记录一次name,key的远程读取,返回是否写入本地缓存
+     */
+    private boolean admit(String name, String key) {
+        LocalConfig config = this.localConfigs.get(name);
+        int threshold = config == null || config.getAdmissionThreshold() <= 0 ? localAdmissionThreshold : config.getAdmissionThreshold();
+        if (threshold <= 1) {
+            return true;
+        }
+        FrequencySketch sketch = this.admissions.get(name);
+        if (sketch == null) {
+            FrequencySketch created = new FrequencySketch(localAdmissionSampleSize);
+            sketch = this.admissions.putIfAbsent(name, created);
+            if (sketch == null) {
+                sketch = created;
+            }
+        }
+        sketch.increment(key);
+        if (sketch.frequency(key) >= threshold) {
+            this.stats.recordAdmission();
+            return true;
+        }
+        this.stats.recordAdmissionReject();
+        return false;
+    }
+
+    /**
+     * name的本地缓存过期时间,未配置时为localTimeToLiveSeconds
+     */
+    private int getLocalTtl(String name) {
+        LocalConfig config = this.localConfigs.get(name);
+        return config == null || config.getTimeToLiveSeconds() <= 0 ? localTimeToLiveSeconds : config.getTimeToLiveSeconds();
+    }
+
+    /**
+     * 根据localStoreType创建本地缓存存储
+     */
+    private LocalStore newLocalStore() {
+        if (LOCAL_STORE_TINYLFU.equals(localStoreType)) {
+            return new TinyLfuLocalStore(localMaximumSize);
+        }
+        if (LOCAL_STORE_OFFHEAP.equals(localStoreType)) {
+            return new OffHeapLocalStore(this.jedisTemplate.getValSerializer(), MemoryUnit.parseSizeInBytes(localMaxBytesOffHeap));
+        }
+        // 每次启动设置新的文件地址,以避免重启期间一级缓存未同步,以及单机多应用启动造成EhcacheManager重复的问题.
+        return new EhcacheLocalStore(Cache.ID, localStoreLocation + Cache.ID, localMaxBytesLocalHeap, localMaxBytesLocalDisk, localTimeToLiveSeconds, localDiskExpiryThreadIntervalSeconds);
+    }
+
+    private Set<String> getCaches() {
+        Set<String> caches = Sets.newHashSet();
+        Set<String> memebers = this.jedisTemplate.smembers(this.getRedisKeyOfStore());
+        List<String> deletes = Lists.newArrayList();
+        for (String memeber : memebers) {
+            // Hash索引与有序集合索引均不存在时移除;迁移完成前仅有Hash索引的名称仍保留
+            if (!this.jedisTemplate.exists(this.getRedisKeyOfCache(memeber)) && !this.jedisTemplate.exists(this.getRedisKeyOfSortedIndex(memeber))) {
+                deletes.add(memeber);
+                this.jedisTemplate.srem(this.getRedisKeyOfStore(), memeber);
+                continue;
+            }
+            caches.add(memeber);
+        }
+        return caches;
+    }
+
+    private Set<String> getElements(String cache) {
+        if (this.sortedIndexEnabled) {
+            long now = this.pruneSortedIndex(cache);
+            return this.jedisTemplate.zrangeByScore(this.getRedisKeyOfSortedIndex(cache), now, Double.POSITIVE_INFINITY);
+        }
+        Set<String> elements = Sets.newHashSet();
+        Map<String, Integer> cachefields = this.jedisTemplate.hgetAll(this.getRedisKeyOfCache(cache));
+        List<String> deletes = Lists.newArrayList();
+        for (String field : cachefields.keySet()) {
+            Integer data = cachefields.get(field);
+            if (data > 0) {
+                int ttl = this.jedisTemplate.ttl(this.getRedisKeyOfElement(cache, field)).intValue();
+                if (ttl < 0) {
+                    // 若已失效
+                    this.del(cache, field);
+                    deletes.add(this.getRedisKeyOfCache(cache));
+                    continue;
+                }
+            }
+            elements.add(field);
+        }
+        this.jedisTemplate.mdel(deletes);
+        return elements;
+    }
+
+    private Set<String> getElementsWithOutExpireCheck(String cache) {
+        if (this.sortedIndexEnabled) {
+            return this.jedisTemplate.zrange(this.getRedisKeyOfSortedIndex(cache), 0, -1);
+        }
+        return this.jedisTemplate.hkeys(this.getRedisKeyOfCache(cache));
+    }
+
+    //
+    // generation
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 获取name当前代际号,本地未缓存时从Redis读取
+     */
+    public long getGeneration(String name) {
+        if (!this.generationEnabled || null == name) {
+            return 0;
+        }
+        Long generation = this.generations.get(name);
+        if (generation == null) {
+            this.updateGeneration(name, this.readGeneration(name));
+            generation = this.generations.get(name);
+        }
+        return generation;
+    }
+
+    /**
+     * 更新本地缓存的代际号,仅递增
+     */
+    protected void updateGeneration(String name, long generation) {
+        while (true) {
+            Long current = this.generations.putIfAbsent(name, generation);
+            if (current == null || current >= generation || this.generations.replace(name, current, generation)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 递增name的代际号,旧代际的缓存值立即不可见
+     */
+    private long incrGeneration(String name) {
+        long generation = this.jedisTemplate.hincrBy(this.getRedisKeyOfGeneration(), name, 1);
+        this.updateGeneration(name, generation);
+        return generation;
+    }
+
+    /**
+     * 从Redis读取name的代际号,未递增过为0
+     */
+    private long readGeneration(String name) {
+        byte[] generation = this.jedisTemplate.hbytes(this.getRedisKeyOfGeneration(), name);
+        return generation == null ? 0 : Long.parseLong(SafeEncoder.encode(generation));
+    }
+
+    /**
+     * 定时从Redis刷新本地缓存的代际号,补偿丢失的同步命令
+     */
+    protected void refreshGenerations() {
+        for (String name : this.generations.keySet()) {
+            try {
+                this.updateGeneration(name, this.readGeneration(name));
+            } catch (Exception e) {
+                logger.warn("refreshGenerations > name:" + name + " failed", e);
+            }
+        }
+    }
+
+    //
+    // persistent
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 获取name的失效纪元,name为null时为cls递增的全局纪元
+     */
+    public long getEpoch(String name) {
+        byte[] value = this.jedisTemplate.bytes(null == name ? Cache.CACHE_EPOCH : this.getRedisKeyOfEpoch(name));
+        return value == null ? 0L : Long.parseLong(SafeEncoder.encode(value));
+    }
+
+    /**
+     * 批量获取失效纪元,一次往返.全局纪元以PersistentLocalStore.GLOBAL为名称
+     */
+    public Map<String, Long> getEpochs(Collection<String> names) {
+        List<String> keys = Lists.newArrayList(Cache.CACHE_EPOCH);
+        for (String name : names) {
+            keys.add(this.getRedisKeyOfEpoch(name));
+        }
+        List<byte[]> values = this.jedisTemplate.mbytes(keys);
+        Map<String, Long> epochs = Maps.newLinkedHashMap();
+        epochs.put(PersistentLocalStore.GLOBAL, values.get(0) == null ? 0L : Long.parseLong(SafeEncoder.encode(values.get(0))));
+        int i = 1;
+        for (String name : names) {
+            byte[] value = values.get(i++);
+            epochs.put(name, value == null ? 0L : Long.parseLong(SafeEncoder.encode(value)));
+        }
+        return epochs;
+    }
+
+    /**
+     * 是否维护失效纪元
+     */
+    public boolean isEpochEnabled() {
+        return this.localPersistentEnabled || this.syncEpochEnabled;
+    }
+
+    /**
+     * 非脚本写入远程缓存后递增失效纪元.发送同步命令时改为于命令发布后递增,见incrEpochs
+     */
+    private void incrEpoch(String name) {
+        if (this.isEpochEnabled() && !this.localEnabled) {
+            this.jedisTemplate.incr(null == name ? Cache.CACHE_EPOCH : this.getRedisKeyOfEpoch(name));
+        }
+    }
+
+    /**
+     * 同步命令发布后递增各名称的失效纪元,cls时递增全局纪元
+     */
+    protected void incrEpochs(Collection<String> names, boolean cls) {
+        if (!this.isEpochEnabled()) {
+            return;
+        }
+        if (cls) {
+            this.jedisTemplate.incr(Cache.CACHE_EPOCH);
+        }
+        for (String name : names) {
+            this.jedisTemplate.incr(this.getRedisKeyOfEpoch(name));
+        }
+    }
+
+    /**
+     * 写入脚本附加失效纪元,由脚本在写入后递增.脚本不发布同步命令时改为于命令发布后递增
+     */
+    private void addEpoch(String name, List<byte[]> keys, List<byte[]> args, boolean published) {
+        if (this.isEpochEnabled() && (published || !this.localEnabled)) {
+            keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfEpoch(name)));
+            args.add(SafeEncoder.encode("epoch"));
+        }
+    }
+
+    /**
+     * 写入脚本附加版本计数,由脚本递增生成版本号
+     */
+    private void addVersion(String name, List<byte[]> keys, List<byte[]> args) {
+        if (this.versionEnabled) {
+            keys.add(this.jedisTemplate.serializeKey(this.getRedisKeyOfVersion(name)));
+            args.add(SafeEncoder.encode("version"));
+        }
+    }
+
+    /**
+     * 以持久化存储装饰本地缓存存储.快照文件已被其他进程使用时不持久化
+     */
+    private LocalStore newPersistentLocalStore(LocalStore store) {
+        String id = Strings.isEmpty(nodeId) ? Cache.HOST : nodeId;
+        File file = new File(localStoreLocation + key + "." + id + ".snapshot");
+        try {
+            return new PersistentLocalStore(store, this.jedisTemplate.getValSerializer(), file);
+        } catch (Exception e) {
+            logger.warn("newPersistentLocalStore > file:" + file + " unavailable, persistence disabled", e);
+            return store;
+        }
+    }
+
+    /**
+     * 恢复本地缓存快照:全局纪元一致时,仅恢复纪元与当前一致的缓存名称.
+     * 恢复期间同步命令可能已被先行处理,恢复后再次比较纪元,不一致的缓存名称清除.两次比较各以一次MGET读取纪元
+     */
+    private void restoreLocal() {
+        PersistentLocalStore store = (PersistentLocalStore) this.localStore;
+        try {
+            Map<String, Long> saved = store.load();
+            if (saved.isEmpty()) {
+                return;
+            }
+            Long global = saved.remove(PersistentLocalStore.GLOBAL);
+            Map<String, Long> epochs = this.getEpochs(saved.keySet());
+            if (global == null || !global.equals(epochs.get(PersistentLocalStore.GLOBAL))) {
+                logger.info("restoreLocal > file:" + store.getFile() + " discarded, cls since saved");
+                return;
+            }
+            int restored = 0;
+            List<String> names = Lists.newArrayList();
+            for (Map.Entry<String, Long> entry : saved.entrySet()) {
+                if (entry.getValue().equals(epochs.get(entry.getKey()))) {
+                    restored += store.restore(entry.getKey());
+                    names.add(entry.getKey());
+                }
+            }
+            epochs = this.getEpochs(names);
+            boolean cls = !global.equals(epochs.get(PersistentLocalStore.GLOBAL));
+            for (String name : Lists.newArrayList(names)) {
+                if (cls || !saved.get(name).equals(epochs.get(name))) {
+                    store.clear(name);
+                    names.remove(name);
+                }
+            }
+            logger.info("restoreLocal > file:" + store.getFile() + ",names:" + names.size() + "/" + saved.size() + ",restored:" + restored);
+        } catch (Exception e) {
+            store.clearAll();
+            logger.warn("restoreLocal > file:" + store.getFile() + " failed", e);
+        } finally {
+            store.unload();
+        }
+    }
+
+    /**
+     * 写入本地缓存快照,须在停止执行同步命令后调用.以Pub/Sub同步时使用心跳已确认的纪元:
+     * 此后有写入的缓存名称纪元已变化,重启时不恢复;尚未确认纪元时不写入.其他同步方式在读取元素前获取纪元
+     */
+    private void saveLocal() {
+        PersistentLocalStore store = (PersistentLocalStore) this.localStore;
+        try {
+            Map<String, Long> epochs;
+            if (this.cacheSync instanceof RedisPubSubSync) {
+                epochs = ((RedisPubSubSync) this.cacheSync).getConfirmedEpochs();
+            } else {
+                epochs = this.getEpochs(store.names());
+            }
+            if (epochs == null) {
+                logger.info("saveLocal > file:" + store.getFile() + " skipped, epochs unconfirmed");
+                return;
+            }
+            int saved = store.save(epochs);
+            logger.info("saveLocal > file:" + store.getFile() + ",names:" + (epochs.size() - 1) + ",saved:" + saved);
+        } catch (Exception e) {
+            logger.warn("saveLocal > file:" + store.getFile() + " failed", e);
+        }
+    }
+
+    //
+    // purge
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 获取rem/cls后台删除进度,含最近结束的任务
+     */
+    public List<CachePurge> getPurges() {
+        return Lists.newArrayList(this.purges.values());
+    }
+
+    /**
+     * 将name的索引重命名为快照后立即返回,新的写入使用新索引;快照中的缓存值由后台线程分批删除,删除时跳过已重新写入索引的Key.
+     * 代际模式下清理的是旧代际,旧代际缓存值已不可见;否则删除完成前get仍可能读到旧值
+     */
+    private void purge(String name, long generation) {
+        long now = System.currentTimeMillis();
+        for (CachePurge purge : this.purges.values()) {
+            if (purge.isFinished() && now - purge.getEndTime() > PURGE_RETAIN_MILLIS) {
+                this.purges.remove(purge.getKey(), purge);
+            }
+        }
+        String redisName = this.getRedisNameOf(name, generation);
+        this.purge(name, redisName, Cache.CACHE_STORE + spliter + redisName, false);
+        this.purge(name, redisName, Cache.CACHE_INDEX + spliter + redisName, true);
+    }
+
+    private void purge(final String name, final String redisName, final String index, final boolean sorted) {
+        final String snapshot = this.getRedisKeyOfPurge(index);
+        List<byte[]> keys = Lists.newArrayList(this.jedisTemplate.serializeKey(index), this.jedisTemplate.serializeKey(snapshot));
+        List<byte[]> args = Lists.newArrayList(SafeEncoder.encode(String.valueOf(PURGE_SNAPSHOT_SECONDS)));
+        if (!Long.valueOf(1).equals(this.jedisTemplate.evalsha(CacheScripts.RENAME_INDEX, keys, args))) {
+            return;
+        }
+        long total = sorted ? this.jedisTemplate.zcard(snapshot) : this.jedisTemplate.hlen(snapshot);
+        final CachePurge purge = new CachePurge(name, snapshot, total);
+        this.purges.put(snapshot, purge);
+        try {
+            this.purgeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String error = null;
+                    try {
+                        purgeSnapshot(redisName, index, purge, sorted);
+                    } catch (Throwable t) {
+                        error = t.toString();
+                        logger.warn("purge > name:" + name + ",key:" + purge.getKey() + " failed", t);
+                    } finally {
+                        purge.finish(error);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            purge.finish(e.toString());
+        }
+        logger.debug("purge > name:" + name + ",key:" + snapshot + ",total:" + total);
+    }
+
+    /**
+     * 以HSCAN/ZSCAN分批遍历快照,删除缓存值并从快照中移除,每批间隔purgeIntervalMillis.
+     * rem后同名Key已重新写入index时仅从快照中移除,保留新写入的缓存值
+     */
+    private void purgeSnapshot(String redisName, String index, CachePurge purge, boolean sorted) throws InterruptedException {
+        // 快照与缓存值位于同一slot时以脚本单次往返删除,否则分别删除
+        boolean script = !this.jedisTemplate.isCluster() || this.scriptEnabled;
+        String cursor = CachePage.FIRST;
+        do {
+            List<String> fields = Lists.newArrayList();
+            if (sorted) {
+                ScanResult<Tuple> result = this.jedisTemplate.zscan(purge.getKey(), cursor, this.purgeBatchSize);
+                for (Tuple tuple : result.getResult()) {
+                    fields.add((String) tuple.getElement());
+                }
+                cursor = result.getStringCursor();
+            } else {
+                ScanResult<Map.Entry<String, Object>> result = this.jedisTemplate.hscan(purge.getKey(), cursor, this.purgeBatchSize);
+                for (Map.Entry<String, Object> entry : result.getResult()) {
+                    fields.add(entry.getKey());
+                }
+                cursor = result.getStringCursor();
+            }
+            if (!fields.isEmpty()) {
+                List<String> elements = Lists.newArrayList();
+                for (String field : fields) {
+                    elements.add(Cache.CACHE_STORE + spliter + redisName + spliter + field);
+                }
+                if (script) {
+                    List<byte[]> keys = Lists.newArrayList(this.jedisTemplate.serializeKey(purge.getKey()), this.jedisTemplate.serializeKey(index));
+                    List<byte[]> args = Lists.newArrayList(SafeEncoder.encode(sorted ? "z" : "h"));
+                    for (int i = 0; i < fields.size(); i++) {
+                        keys.add(this.jedisTemplate.serializeKey(elements.get(i)));
+                        args.add(sorted ? this.jedisTemplate.serializeVal(fields.get(i)) : this.jedisTemplate.serializeKey(fields.get(i)));
+                    }
+                    this.jedisTemplate.evalsha(CacheScripts.PURGE, keys, args);
+                } else {
+                    List<String> deletes = Lists.newArrayList();
+                    for (int i = 0; i < fields.size(); i++) {
+                        boolean live = sorted ? this.jedisTemplate.zscore(index, fields.get(i)) != null : this.jedisTemplate.hexists(index, fields.get(i));
+                        if (!live) {
+                            deletes.add(elements.get(i));
+                        }
+                    }
+                    this.jedisTemplate.mdel(deletes);
+                    if (sorted) {
+                        this.jedisTemplate.zmrem(purge.getKey(), fields);
+                    } else {
+                        this.jedisTemplate.hmdel(purge.getKey(), Lists.<Object> newArrayList(fields));
+                    }
+                }
+                purge.recordDeleted(fields.size());
+            }
+            if (this.purgeIntervalMillis > 0) {
+                Thread.sleep(this.purgeIntervalMillis);
+            }
+        } while (!CachePage.FIRST.equals(cursor));
+        this.jedisTemplate.del(purge.getKey());
+    }
+
+    //
+    // index
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 以HSCAN/ZSCAN分页遍历索引,返回未失效的Key及其剩余TTL.
+     * Hash索引以一次pipeline查询本页TTL,并清除已失效的域
+     */
+    private CachePage<CacheData> scanIndex(String name, String cursor, int count) {
+        List<CacheData> datas = Lists.newArrayList();
+        cursor = Strings.isEmpty(cursor) ? CachePage.FIRST : cursor;
+        if (this.sortedIndexEnabled) {
+            ScanResult<Tuple> result = this.jedisTemplate.zscan(this.getRedisKeyOfSortedIndex(name), cursor, count);
+            long now = System.currentTimeMillis();
+            for (Tuple tuple : result.getResult()) {
+                if (tuple.getScore() > now) {
+                    datas.add(new CacheData(name, (String) tuple.getElement(), null, this.getIndexTtl(tuple.getScore(), now), Level.Remote));
+                }
+            }
+            return new CachePage<CacheData>(result.getStringCursor(), datas);
+        }
+        ScanResult<Map.Entry<String, Integer>> result = this.jedisTemplate.hscan(this.getRedisKeyOfCache(name), cursor, count);
+        List<String> fields = Lists.newArrayList();
+        List<String> elements = Lists.newArrayList();
+        for (Map.Entry<String, Integer> entry : result.getResult()) {
+            fields.add(entry.getKey());
+            elements.add(this.getRedisKeyOfElement(name, entry.getKey()));
+        }
+        List<Long> ttls = this.jedisTemplate.mttl(elements);
+        List<String> expires = Lists.newArrayList();
+        for (int i = 0; i < fields.size(); i++) {
+            long ttl = ttls.get(i);
+            if (ttl < 0) {
+                expires.add(fields.get(i));
+                continue;
+            }
+            datas.add(new CacheData(name, fields.get(i), null, (int) ttl, Level.Remote));
+        }
+        if (!expires.isEmpty()) {
+            this.indexRem(name, expires);
+        }
+        return new CachePage<CacheData>(result.getStringCursor(), datas);
+    }
+
+    /**
+     * 写入索引.Hash索引保存ttl,有序集合索引以过期时间戳为分值
+     */
+    private void indexAdd(String name, Map<String, Integer> fields) {
+        if (this.sortedIndexEnabled) {
+            Map<String, Double> scores = Maps.newHashMap();
+            for (Map.Entry<String, Integer> entry : fields.entrySet()) {
+                scores.put(entry.getKey(), (double) this.getIndexScore(entry.getValue()));
+            }
+            this.jedisTemplate.zmadd(this.getRedisKeyOfSortedIndex(name), scores);
+        } else if (fields.size() == 1) {
+            Map.Entry<String, Integer> entry = fields.entrySet().iterator().next();
+            this.jedisTemplate.hset(this.getRedisKeyOfCache(name), entry.getKey(), entry.getValue());
+        } else {
+            this.jedisTemplate.hmset(this.getRedisKeyOfCache(name), fields);
+        }
+    }
+
+    /**
+     * 删除索引
+     */
+    private void indexRem(String name, Collection<String> fields) {
+        if (this.sortedIndexEnabled) {
+            this.jedisTemplate.zmrem(this.getRedisKeyOfSortedIndex(name), Lists.newArrayList(fields));
+        } else {
+            this.jedisTemplate.hmdel(this.getRedisKeyOfCache(name), Lists.<Object> newArrayList(fields));
+        }
+    }
+
+    /**
+     * 清除有序集合索引中已过期的成员,返回当前时间
+     */
+    private long pruneSortedIndex(String name) {
+        long now = System.currentTimeMillis();
+        this.jedisTemplate.zremrangeByScore(this.getRedisKeyOfSortedIndex(name), Double.NEGATIVE_INFINITY, now);
+        return now;
+    }
+
+    /**
+     * 有序集合索引分值:过期时间戳(毫秒),永久缓存为PERMANENT_SCORE
+     */
+    private long getIndexScore(long ttl) {
+        return ttl > 0 ? System.currentTimeMillis() + ttl * 1000L : PERMANENT_SCORE;
+    }
+
+    /**
+     * 由有序集合索引分值计算剩余TTL,0为永久
+     */
+    private int getIndexTtl(double score, long now) {
+        if (score >= PERMANENT_SCORE) {
+            return 0;
+        }
+        return (int) Math.max(1, (long) Math.ceil((score - now) / 1000));
+    }
+
+    /**
+     * 脚本中的索引成员,与jedisTemplate的Hash域/有序集合成员序列化方式一致
+     */
+    private byte[] getIndexField(String field) {
+        return this.sortedIndexEnabled ? this.jedisTemplate.serializeVal(field) : this.jedisTemplate.serializeKey(field);
+    }
+
+    /**
+     * 脚本中的索引值:有序集合为分值,Hash为ttl
+     */
+    private byte[] getIndexValue(int ttl) {
+        if (this.sortedIndexEnabled) {
+            return SafeEncoder.encode(String.valueOf(this.getIndexScore(ttl)));
+        }
+        return this.jedisTemplate.serializeVal(ttl);
+    }
+
+    /**
+     * 脚本中的索引类型
+     */
+    private byte[] getIndexType() {
+        return SafeEncoder.encode(this.sortedIndexEnabled ? "z" : "h");
+    }
+
+    /**
+     * 将所有缓存名称的Hash索引迁移至有序集合索引,返回迁移的Key数量
+     */
+    public int migrateIndex() {
+        int migrated = 0;
+        Set<String> members = this.jedisTemplate.smembers(this.getRedisKeyOfStore());
+        for (String name : members) {
+            migrated += this.migrateIndex(name);
+        }
+        return migrated;
+    }
+
+    /**
+     * 将name的Hash索引(smart:cache:store:user)迁移至有序集合索引(smart:cache:index:user),返回迁移的Key数量.
+     * 分值由各缓存值剩余TTL计算,已失效的Key丢弃,迁移完成后删除Hash索引.
+     * 应在所有节点启用sortedIndexEnabled后执行,可重复执行
+     */
+    public int migrateIndex(String name) {
+        String cache = this.getRedisKeyOfCache(name);
+        if (!"hash".equals(this.jedisTemplate.type(cache))) {
+            return 0;
+        }
+        List<String> fields = Lists.newArrayList(this.jedisTemplate.<String> hkeys(cache));
+        List<byte[]> keys = Lists.newArrayList(this.jedisTemplate.serializeKey(this.getRedisKeyOfSortedIndex(name)));
+        long migrated = 0;
+        for (List<String> partition : Lists.partition(fields, MIGRATE_BATCH_SIZE)) {
+            List<String> elements = Lists.newArrayList();
+            for (String field : partition) {
+                elements.add(this.getRedisKeyOfElement(name, field));
+            }
+            List<Long> ttls = this.jedisTemplate.mttl(elements);
+            List<byte[]> args = Lists.newArrayList();
+            for (int i = 0; i < partition.size(); i++) {
+                long ttl = ttls.get(i);
+                if (ttl < 0) {
+                    continue;
+                }
+                args.add(SafeEncoder.encode(String.valueOf(this.getIndexScore(ttl))));
+                args.add(this.jedisTemplate.serializeVal(partition.get(i)));
+            }
+            if (!args.isEmpty()) {
+                migrated += (Long) this.jedisTemplate.evalsha(CacheScripts.MIGRATE_INDEX, keys, args);
+            }
+        }
+        this.jedisTemplate.del(cache);
+        logger.info("migrateIndex > name:" + name + ",fields:" + fields.size() + ",migrated:" + migrated);
+        return (int) migrated;
+    }
+
+    //
+    // private getRedisKeyOf
+    // ---------------------------------------------------------------------------------------------------
+    private String getRedisKeyOfStore() {
+        return Cache.CACHE_STORE;
+    }
+
+    private String getRedisKeyOfGeneration() {
+        return Cache.CACHE_GENERATION;
+    }
+
+    /**
+     * 与缓存名称的索引位于同一slot,不随代际变化
+     */
+    private String getRedisKeyOfEpoch(String name) {
+        return Cache.CACHE_EPOCH + spliter + this.getRedisNameOf(name, 0);
+    }
+
+    /**
+     * 与缓存名称的索引位于同一slot,不随代际变化
+     */
+    private String getRedisKeyOfVersion(String name) {
+        return Cache.CACHE_VERSION + spliter + this.getRedisNameOf(name, 0);
+    }
+
+    private String getRedisKeyOfCache(String name) {
+        return Cache.CACHE_STORE + spliter + this.getRedisNameOf(name);
+    }
+
+    private String getRedisKeyOfSortedIndex(String name) {
+        return Cache.CACHE_INDEX + spliter + this.getRedisNameOf(name);
+    }
+
+    /**
+     * 当前使用的索引
+     */
+    private String getRedisKeyOfIndex(String name) {
+        return this.sortedIndexEnabled ? this.getRedisKeyOfSortedIndex(name) : this.getRedisKeyOfCache(name);
+    }
+
+    /**
+     * 索引快照.RENAME要求同一slot,集群模式下索引Key无hash tag时以其整体作为hash tag
+     */
+    private String getRedisKeyOfPurge(String index) {
+        String suffix = spliter + "purge" + spliter + Cache.ID + spliter + System.nanoTime();
+        if (this.jedisTemplate.isCluster() && !index.contains("{")) {
+            return "{" + index + "}" + suffix;
+        }
+        return index + suffix;
+    }
+
+    private String getRedisKeyOfElement(String name, String key) {
+        return Cache.CACHE_STORE + spliter + this.getRedisNameOf(name) + spliter + key;
+    }
+
+    private String getRedisKeyOfBloom(String name) {
+        return Cache.CACHE_BLOOM + spliter + name;
+    }
+
+    private String getRedisKeyOfLease(String name, String key) {
+        return Cache.CACHE_LEASE + spliter + name + spliter + key;
+    }
+
+    /**
+     * 集群脚本写入时,以{name}作为hash tag,保证同一缓存名称下的索引与缓存值位于同一slot
+     */
+    private String getRedisNameOf(String name) {
+        return this.getRedisNameOf(name, this.getGeneration(name));
+    }
+
+    /**
+     * 代际模式下代际号大于0时附加于缓存名称后,如smart:cache:store:user#3:John.
+     * 代际模式下缓存名称中的#转义为##,使名称为user#3的缓存不与代际号为3的user冲突
+     */
+    private String getRedisNameOf(String name, long generation) {
+        String redisName = name;
+        if (this.generationEnabled && name.indexOf(GENERATION_SPLITER) >= 0) {
+            redisName = name.replace(GENERATION_SPLITER, GENERATION_SPLITER + GENERATION_SPLITER);
+        }
+        if (this.scriptEnabled && this.jedisTemplate.isCluster()) {
+            redisName = "{" + redisName + "}";
+        }
+        if (this.generationEnabled && generation > 0) {
+            redisName = redisName + GENERATION_SPLITER + generation;
+        }
+        return redisName;
+    }
+
+    //
+    // getter & setter
+    // ---------------------------------------------------------------------------------------------------
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
     }
 
     public JedisTemplate getJedisTemplate() {
@@ -797,6 +2782,158 @@ public class CacheTemplate implements InitializingBean {
         this.spliter = spliter;
     }
 
+    public boolean isScriptEnabled() {
+        return scriptEnabled;
+    }
+
+    public void setScriptEnabled(boolean scriptEnabled) {
+        this.scriptEnabled = scriptEnabled;
+    }
+
+    public boolean isEnvelopeEnabled() {
+        return envelopeEnabled;
+    }
+
+    public void setEnvelopeEnabled(boolean envelopeEnabled) {
+        this.envelopeEnabled = envelopeEnabled;
+    }
+
+    public boolean isVersionEnabled() {
+        return versionEnabled;
+    }
+
+    public void setVersionEnabled(boolean versionEnabled) {
+        this.versionEnabled = versionEnabled;
+    }
+
+    public boolean isGenerationEnabled() {
+        return generationEnabled;
+    }
+
+    public void setGenerationEnabled(boolean generationEnabled) {
+        this.generationEnabled = generationEnabled;
+    }
+
+    public int getGenerationRefreshSeconds() {
+        return generationRefreshSeconds;
+    }
+
+    public void setGenerationRefreshSeconds(int generationRefreshSeconds) {
+        this.generationRefreshSeconds = generationRefreshSeconds;
+    }
+
+    public boolean isSortedIndexEnabled() {
+        return sortedIndexEnabled;
+    }
+
+    public void setSortedIndexEnabled(boolean sortedIndexEnabled) {
+        this.sortedIndexEnabled = sortedIndexEnabled;
+    }
+
+    public boolean isLeaseEnabled() {
+        return leaseEnabled;
+    }
+
+    public void setLeaseEnabled(boolean leaseEnabled) {
+        this.leaseEnabled = leaseEnabled;
+    }
+
+    public LeaseConfig getLeaseConfig() {
+        return leaseConfig;
+    }
+
+    public void setLeaseConfig(LeaseConfig leaseConfig) {
+        this.leaseConfig = leaseConfig;
+    }
+
+    public Map<String, LeaseConfig> getLeaseConfigs() {
+        return leaseConfigs;
+    }
+
+    public void setLeaseConfigs(Map<String, LeaseConfig> leaseConfigs) {
+        this.leaseConfigs = leaseConfigs;
+    }
+
+    public Map<String, BloomConfig> getBloomConfigs() {
+        return bloomConfigs;
+    }
+
+    public void setBloomConfigs(Map<String, BloomConfig> bloomConfigs) {
+        this.bloomConfigs = bloomConfigs;
+    }
+
+    public int getBloomRefreshSeconds() {
+        return bloomRefreshSeconds;
+    }
+
+    public void setBloomRefreshSeconds(int bloomRefreshSeconds) {
+        this.bloomRefreshSeconds = bloomRefreshSeconds;
+    }
+
+    public boolean isTombstoneEnabled() {
+        return tombstoneEnabled;
+    }
+
+    public void setTombstoneEnabled(boolean tombstoneEnabled) {
+        this.tombstoneEnabled = tombstoneEnabled;
+    }
+
+    public int getTombstoneTimeToLiveSeconds() {
+        return tombstoneTimeToLiveSeconds;
+    }
+
+    public void setTombstoneTimeToLiveSeconds(int tombstoneTimeToLiveSeconds) {
+        this.tombstoneTimeToLiveSeconds = tombstoneTimeToLiveSeconds;
+    }
+
+    public boolean isRefreshAheadEnabled() {
+        return refreshAheadEnabled;
+    }
+
+    public void setRefreshAheadEnabled(boolean refreshAheadEnabled) {
+        this.refreshAheadEnabled = refreshAheadEnabled;
+    }
+
+    public double getRefreshBeta() {
+        return refreshBeta;
+    }
+
+    public void setRefreshBeta(double refreshBeta) {
+        this.refreshBeta = refreshBeta;
+    }
+
+    public Map<String, Double> getRefreshBetas() {
+        return refreshBetas;
+    }
+
+    public void setRefreshBetas(Map<String, Double> refreshBetas) {
+        this.refreshBetas = refreshBetas;
+    }
+
+    public int getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    public void setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    public int getPurgeBatchSize() {
+        return purgeBatchSize;
+    }
+
+    public void setPurgeBatchSize(int purgeBatchSize) {
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    public long getPurgeIntervalMillis() {
+        return purgeIntervalMillis;
+    }
+
+    public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+        this.purgeIntervalMillis = purgeIntervalMillis;
+    }
+
     public boolean isSetCmdEnabled() {
         return setCmdEnabled;
     }
@@ -805,6 +2942,94 @@ public class CacheTemplate implements InitializingBean {
         this.setCmdEnabled = setCmdEnabled;
     }
 
+    public LocalStore getLocalStore() {
+        return localStore;
+    }
+
+    public void setLocalStore(LocalStore localStore) {
+        this.localStore = localStore;
+    }
+
+    public String getLocalStoreType() {
+        return localStoreType;
+    }
+
+    public void setLocalStoreType(String localStoreType) {
+        this.localStoreType = localStoreType;
+    }
+
+    public long getLocalMaximumSize() {
+        return localMaximumSize;
+    }
+
+    public void setLocalMaximumSize(long localMaximumSize) {
+        this.localMaximumSize = localMaximumSize;
+    }
+
+    public CopyPolicy getLocalCopyPolicy() {
+        return localCopyPolicy;
+    }
+
+    public void setLocalCopyPolicy(CopyPolicy localCopyPolicy) {
+        this.localCopyPolicy = localCopyPolicy;
+    }
+
+    public Map<String, CopyPolicy> getLocalCopyPolicies() {
+        return localCopyPolicies;
+    }
+
+    public void setLocalCopyPolicies(Map<String, CopyPolicy> localCopyPolicies) {
+        this.localCopyPolicies = localCopyPolicies;
+    }
+
+    public String getLocalMaxBytesOffHeap() {
+        return localMaxBytesOffHeap;
+    }
+
+    public void setLocalMaxBytesOffHeap(String localMaxBytesOffHeap) {
+        this.localMaxBytesOffHeap = localMaxBytesOffHeap;
+    }
+
+    public Map<String, LocalConfig> getLocalConfigs() {
+        return localConfigs;
+    }
+
+    public void setLocalConfigs(Map<String, LocalConfig> localConfigs) {
+        this.localConfigs = new ConcurrentHashMap<>(localConfigs);
+    }
+
+    public int getLocalAdmissionThreshold() {
+        return localAdmissionThreshold;
+    }
+
+    public void setLocalAdmissionThreshold(int localAdmissionThreshold) {
+        this.localAdmissionThreshold = Math.min(localAdmissionThreshold, FrequencySketch.MAX_COUNT);
+    }
+
+    public long getLocalAdmissionSampleSize() {
+        return localAdmissionSampleSize;
+    }
+
+    public void setLocalAdmissionSampleSize(long localAdmissionSampleSize) {
+        this.localAdmissionSampleSize = localAdmissionSampleSize;
+    }
+
+    public boolean isLocalPersistentEnabled() {
+        return localPersistentEnabled;
+    }
+
+    public void setLocalPersistentEnabled(boolean localPersistentEnabled) {
+        this.localPersistentEnabled = localPersistentEnabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
     public String getLocalStoreLocation() {
         return localStoreLocation;
     }
@@ -857,4 +3082,100 @@ public class CacheTemplate implements InitializingBean {
         this.fetchTimeoutSeconds = fetchTimeoutSeconds;
     }
 
+    public int getSyncBatchWindowMillis() {
+        return syncBatchWindowMillis;
+    }
+
+    public void setSyncBatchWindowMillis(int syncBatchWindowMillis) {
+        this.syncBatchWindowMillis = syncBatchWindowMillis;
+    }
+
+    public int getSyncBatchMaxKeys() {
+        return syncBatchMaxKeys;
+    }
+
+    public void setSyncBatchMaxKeys(int syncBatchMaxKeys) {
+        this.syncBatchMaxKeys = syncBatchMaxKeys;
+    }
+
+    public boolean isSyncFrameEnabled() {
+        return syncFrameEnabled;
+    }
+
+    public void setSyncFrameEnabled(boolean syncFrameEnabled) {
+        this.syncFrameEnabled = syncFrameEnabled;
+    }
+
+    public String getSyncType() {
+        return syncType;
+    }
+
+    public void setSyncType(String syncType) {
+        this.syncType = syncType;
+    }
+
+    public long getSyncStreamMaxLength() {
+        return syncStreamMaxLength;
+    }
+
+    public void setSyncStreamMaxLength(long syncStreamMaxLength) {
+        this.syncStreamMaxLength = syncStreamMaxLength;
+    }
+
+    public int getSyncStreamBatchSize() {
+        return syncStreamBatchSize;
+    }
+
+    public void setSyncStreamBatchSize(int syncStreamBatchSize) {
+        this.syncStreamBatchSize = syncStreamBatchSize;
+    }
+
+    public int getSyncStreamBlockMillis() {
+        return syncStreamBlockMillis;
+    }
+
+    public void setSyncStreamBlockMillis(int syncStreamBlockMillis) {
+        this.syncStreamBlockMillis = syncStreamBlockMillis;
+    }
+
+    public int getSyncHandlerThreads() {
+        return syncHandlerThreads;
+    }
+
+    public void setSyncHandlerThreads(int syncHandlerThreads) {
+        this.syncHandlerThreads = syncHandlerThreads;
+    }
+
+    public int getSyncHandlerQueueSize() {
+        return syncHandlerQueueSize;
+    }
+
+    public void setSyncHandlerQueueSize(int syncHandlerQueueSize) {
+        this.syncHandlerQueueSize = syncHandlerQueueSize;
+    }
+
+    public int getSyncHeartbeatSeconds() {
+        return syncHeartbeatSeconds;
+    }
+
+    public void setSyncHeartbeatSeconds(int syncHeartbeatSeconds) {
+        this.syncHeartbeatSeconds = syncHeartbeatSeconds;
+    }
+
+    public int getSyncReconnectMaxSeconds() {
+        return syncReconnectMaxSeconds;
+    }
+
+    public void setSyncReconnectMaxSeconds(int syncReconnectMaxSeconds) {
+        this.syncReconnectMaxSeconds = syncReconnectMaxSeconds;
+    }
+
+    public boolean isSyncEpochEnabled() {
+        return syncEpochEnabled;
+    }
+
+    public void setSyncEpochEnabled(boolean syncEpochEnabled) {
+        this.syncEpochEnabled = syncEpochEnabled;
+    }
+
 }
\ No newline at end of file
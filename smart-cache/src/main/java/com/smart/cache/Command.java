@@ -1,6 +1,7 @@
 package com.smart.cache;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Command
@@ -10,28 +11,42 @@ import java.io.Serializable;
  */
 public class Command implements Serializable {
 
-    private static final long serialVersionUID  = 7126530485423286910L;
+    private static final long     serialVersionUID  = 7126530485423286910L;
 
     // 设置本地缓存
-    public final static byte  OPT_SET           = 0x01;
+    public final static byte      OPT_SET           = 0x01;
     // 删除本地缓存Key
-    public final static byte  OPT_DEL           = 0x02;
+    public final static byte      OPT_DEL           = 0x02;
     // 删除本地缓存
-    public final static byte  OPT_REM           = 0x03;
+    public final static byte      OPT_REM           = 0x03;
     // 清空本地缓存
-    public final static byte  OPT_CLS           = 0x04;
+    public final static byte      OPT_CLS           = 0x04;
     // 获取多机本地缓存Key
-    public final static byte  OPT_FETCH         = 0x05;
+    public final static byte      OPT_FETCH         = 0x05;
+    // 批量设置本地缓存
+    public final static byte      OPT_MSET          = 0x06;
+    // 批量删除本地缓存Key
+    public final static byte      OPT_MDEL          = 0x07;
+    // 合并的同步命令(CommandBatch),仅用于二进制格式
+    public final static byte      OPT_BATCH         = 0x08;
     // 失效后更新，即从多级缓存中拿出数据重新设置
-    public final static byte  OPT_EXPIRE_UPDATE = 0x10;
+    public final static byte      OPT_EXPIRE_UPDATE = 0x10;
     // 失效后删除
-    public final static byte  OPT_EXPIRE_DELETE = 0x11;
+    public final static byte      OPT_EXPIRE_DELETE = 0x11;
 
-    public byte               oper;
-    public String             name;
-    public String             key;
-    public String             src;
-    public String             fetch;
+    public byte                   oper;
+    public String                 name;
+    public String                 key;
+    public String                 src;
+    public String                 fetch;
+    // 以下字段仅以二进制格式传输,序列化格式与旧版本节点保持一致
+    // 发送节点号,二进制格式中以此识别本节点发出的命令
+    public transient long         node;
+    public transient List<String> keys;
+    // rem后的代际号
+    public transient long         generation;
+    // set/del写入的版本号,由写入脚本生成,0为未知
+    public transient long         version;
 
     public Command() {
     }
@@ -41,6 +56,7 @@ public class Command implements Serializable {
         this.name = name;
         this.key = key;
         this.src = Cache.ID;
+        this.node = Cache.NODE;
     }
 
     public Command(byte operator, String name, String key, String fetch) {
@@ -56,10 +72,28 @@ public class Command implements Serializable {
         return new Command(OPT_DEL, cacheName, key);
     }
 
+    public static Command mset(String cacheName, List<String> keys) {
+        Command command = new Command(OPT_MSET, cacheName, null);
+        command.keys = keys;
+        return command;
+    }
+
+    public static Command mdel(String cacheName, List<String> keys) {
+        Command command = new Command(OPT_MDEL, cacheName, null);
+        command.keys = keys;
+        return command;
+    }
+
     public static Command rem(String cacheName) {
         return new Command(OPT_REM, cacheName, null);
     }
 
+    public static Command rem(String cacheName, long generation) {
+        Command command = new Command(OPT_REM, cacheName, null);
+        command.generation = generation;
+        return command;
+    }
+
     public static Command cls() {
         return new Command(OPT_CLS, null, null);
     }
@@ -87,10 +121,16 @@ public class Command implements Serializable {
             case Command.OPT_FETCH:
                 opt = "fetch";
                 break;
+            case Command.OPT_MSET:
+                opt = "mset";
+                break;
+            case Command.OPT_MDEL:
+                opt = "mdel";
+                break;
             default:
                 opt = "unknown";
         }
-        return "Command [oper=" + opt + ", name=" + name + ", key=" + key + "]";
+        return "Command [oper=" + opt + ", name=" + name + ", key=" + key + (keys == null ? "" : ", keys=" + keys) + (generation == 0 ? "" : ", generation=" + generation) + (version == 0 ? "" : ", version=" + version) + "]";
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.smart.cache;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * CommandBatch
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 合并后的同步命令.接收方依次执行cls,rem,mdel,mset,批次内已被cls/rem覆盖的命令在发送前丢弃,同一key仅保留最后一次操作.
+ *
+ * @author YRain
+ */
+public class CommandBatch implements Serializable {
+
+    private static final long        serialVersionUID = -5186401265032987814L;
+
+    // 发送节点号
+    public long                      node;
+    // 是否清空本地缓存
+    public boolean                   cls;
+    // 删除本地缓存的名称及rem后的代际号
+    public Map<String, Long>         rems             = Maps.newLinkedHashMap();
+    // 按名称删除的本地缓存Key
+    public Map<String, List<String>> dels             = Maps.newLinkedHashMap();
+    // 按名称重新设置的本地缓存Key
+    public Map<String, List<String>> sets             = Maps.newLinkedHashMap();
+
+    public CommandBatch() {
+    }
+
+    public CommandBatch(long node) {
+        this.node = node;
+    }
+
+    public boolean isEmpty() {
+        return !this.cls && this.rems.isEmpty() && this.dels.isEmpty() && this.sets.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CommandBatch [cls=" + cls + ", rems=" + rems.keySet() + ", dels=" + dels.keySet() + ", sets=" + sets.keySet() + "]";
+    }
+
+}
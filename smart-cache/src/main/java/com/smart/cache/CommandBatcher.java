@@ -0,0 +1,167 @@
+package com.smart.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * CommandBatcher
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 同步命令合并发送.首个命令到达后等待windowMillis,或待发送Key数量达到maxKeys时,将期间的命令合并为一条CommandBatch发送.
+ * cls丢弃此前所有命令,rem丢弃此前该名称的Key命令,同一Key的set/del仅保留最后一次.fetch需等待响应,不合并.
+ *
+ * @author YRain
+ */
+public class CommandBatcher {
+
+    public static final Logger                logger   = LoggerFactory.getLogger(CommandBatcher.class);
+
+    private final RedisPubSubSync             sync;
+    private final int                         windowMillis;
+    private final int                         maxKeys;
+    private final ScheduledExecutorService    executor;
+    // 待发送命令,以下字段由this保护
+    private boolean                           cls;
+    private Map<String, Long>                 rems     = Maps.newLinkedHashMap();
+    // name -> key -> 是否为set
+    private Map<String, Map<String, Boolean>> keys     = Maps.newLinkedHashMap();
+    private int                               size;
+    private boolean                           scheduled;
+    // 接收的命令数
+    private final AtomicLong                  commands = new AtomicLong();
+    // 发送的批次数
+    private final AtomicLong                  batches  = new AtomicLong();
+
+    public CommandBatcher(RedisPubSubSync sync, int windowMillis, int maxKeys) {
+        this.sync = sync;
+        this.windowMillis = windowMillis;
+        this.maxKeys = Math.max(1, maxKeys);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("CommandBatcher-%d").setDaemon(true).build());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+    }
+
+    /**
+     * 加入待发送命令
+     */
+    public void add(Command command) {
+        this.commands.incrementAndGet();
+        boolean full;
+        synchronized (this) {
+            switch (command.oper) {
+                case Command.OPT_CLS:
+                    this.cls = true;
+                    this.rems.clear();
+                    this.keys.clear();
+                    this.size = 0;
+                    break;
+                case Command.OPT_REM:
+                    Long generation = this.rems.get(command.name);
+                    this.rems.put(command.name, generation == null ? command.generation : Math.max(generation, command.generation));
+                    Map<String, Boolean> removed = this.keys.remove(command.name);
+                    if (removed != null) {
+                        this.size -= removed.size();
+                    }
+                    break;
+                case Command.OPT_SET:
+                case Command.OPT_DEL:
+                    this.put(command.name, command.key, command.oper == Command.OPT_SET);
+                    break;
+                case Command.OPT_MSET:
+                case Command.OPT_MDEL:
+                    for (String key : command.keys) {
+                        this.put(command.name, key, command.oper == Command.OPT_MSET);
+                    }
+                    break;
+                default:
+                    logger.warn("add > Unknown Command " + command);
+                    return;
+            }
+            full = this.size >= this.maxKeys;
+            if (!full && !this.scheduled) {
+                this.scheduled = true;
+                this.executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            this.flush();
+        }
+    }
+
+    /**
+     * 立即发送待发送命令
+     */
+    public void flush() {
+        CommandBatch batch = new CommandBatch(Cache.NODE);
+        synchronized (this) {
+            batch.cls = this.cls;
+            batch.rems = this.rems;
+            for (Map.Entry<String, Map<String, Boolean>> entry : this.keys.entrySet()) {
+                for (Map.Entry<String, Boolean> key : entry.getValue().entrySet()) {
+                    Map<String, List<String>> target = key.getValue() ? batch.sets : batch.dels;
+                    if (!target.containsKey(entry.getKey())) {
+                        target.put(entry.getKey(), Lists.<String> newArrayList());
+                    }
+                    target.get(entry.getKey()).add(key.getKey());
+                }
+            }
+            this.cls = false;
+            this.rems = Maps.newLinkedHashMap();
+            this.keys = Maps.newLinkedHashMap();
+            this.size = 0;
+            this.scheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            this.sync.sendBatch(batch);
+            this.batches.incrementAndGet();
+        } catch (Exception e) {
+            logger.warn("flush > " + batch + " failed", e);
+        }
+    }
+
+    /**
+     * 发送剩余命令并停止
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.flush();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    private void put(String name, String key, boolean set) {
+        Map<String, Boolean> pending = this.keys.get(name);
+        if (pending == null) {
+            pending = Maps.newLinkedHashMap();
+            this.keys.put(name, pending);
+        }
+        if (pending.put(key, set) == null) {
+            this.size++;
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.smart.cache;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.smart.util.Utils;
+
+/**
+ * CommandCodec
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 同步命令的二进制格式,接收方仅读取消息头即可丢弃本节点发出的命令,无需反序列化.
+ * [0] 魔数 | [1] 格式版本 | [2] 命令类型 | 节点号(varint) | name | key | 附加内容(按命令类型)
+ * 字符串以varint(UTF-8长度+1)开头,0为null.附加内容:fetch为fetch字符串,mset/mdel为varint数量及key,rem为varint代际号,
+ * 合并命令为cls标记,rem数量及(name,代际号),del名称数量及(name,key数量,key...),set同del.
+ * set/del末尾可附加8字节大端版本号(由写入脚本追加),无附加时版本号为0.内容截断时解码抛出IllegalArgumentException.
+ *
+ * @author YRain
+ */
+public class CommandCodec {
+
+    public static final byte     MAGIC   = (byte) 0xC5;
+    public static final byte     VERSION = 0x01;
+
+    private static final Charset UTF_8   = Charset.forName("UTF-8");
+
+    private CommandCodec() {
+    }
+
+    //
+    // encode
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 编码同步命令
+     */
+    public static byte[] encode(Command command) {
+        Output out = new Output(64);
+        out.header(command.oper, command.node);
+        out.writeString(command.name);
+        out.writeString(command.key);
+        switch (command.oper) {
+            case Command.OPT_FETCH:
+                out.writeString(command.fetch);
+                break;
+            case Command.OPT_MSET:
+            case Command.OPT_MDEL:
+                out.writeStrings(command.keys);
+                break;
+            case Command.OPT_REM:
+                out.writeVarLong(command.generation);
+                break;
+            case Command.OPT_SET:
+            case Command.OPT_DEL:
+                if (command.version > 0) {
+                    out.writeLong(command.version);
+                }
+                break;
+            default:
+                break;
+        }
+        return out.toBytes();
+    }
+
+    /**
+     * 编码合并后的同步命令
+     */
+    public static byte[] encode(CommandBatch batch) {
+        Output out = new Output(256);
+        out.header(Command.OPT_BATCH, batch.node);
+        out.writeString(null);
+        out.writeString(null);
+        out.write(batch.cls ? 1 : 0);
+        out.writeVarLong(batch.rems.size());
+        for (Map.Entry<String, Long> entry : batch.rems.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVarLong(entry.getValue());
+        }
+        out.writeKeys(batch.dels);
+        out.writeKeys(batch.sets);
+        return out.toBytes();
+    }
+
+    //
+    // decode
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 是否为二进制格式的同步命令
+     */
+    public static boolean isCommand(byte[] bytes) {
+        return null != bytes && bytes.length >= 4 && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 读取消息头中的命令类型
+     */
+    public static byte getOper(byte[] bytes) {
+        return bytes[2];
+    }
+
+    /**
+     * 读取消息头中的节点号
+     */
+    public static long getNode(byte[] bytes) {
+        return new Input(bytes, 3).readVarLong();
+    }
+
+    /**
+     * 解码同步命令,返回Command或CommandBatch,格式版本不支持时返回null,内容截断或格式错误时抛出IllegalArgumentException
+     */
+    public static Object decode(byte[] bytes) {
+        if (!isCommand(bytes) || bytes[1] != VERSION) {
+            return null;
+        }
+        byte oper = bytes[2];
+        Input in = new Input(bytes, 3);
+        long node = in.readVarLong();
+        String name = in.readString();
+        String key = in.readString();
+        if (oper == Command.OPT_BATCH) {
+            CommandBatch batch = new CommandBatch(node);
+            batch.cls = in.read() == 1;
+            int rems = in.readVarInt();
+            for (int i = 0; i < rems; i++) {
+                batch.rems.put(in.readString(), in.readVarLong());
+            }
+            in.readKeys(batch.dels);
+            in.readKeys(batch.sets);
+            return batch;
+        }
+        Command command = new Command();
+        command.oper = oper;
+        command.node = node;
+        command.name = name;
+        command.key = key;
+        switch (oper) {
+            case Command.OPT_FETCH:
+                command.fetch = in.readString();
+                break;
+            case Command.OPT_MSET:
+            case Command.OPT_MDEL:
+                command.keys = in.readStrings();
+                break;
+            case Command.OPT_REM:
+                command.generation = in.readVarLong();
+                break;
+            case Command.OPT_SET:
+            case Command.OPT_DEL:
+                if (in.remaining() > 0) {
+                    command.version = in.readLong();
+                }
+                break;
+            default:
+                break;
+        }
+        return command;
+    }
+
+    //
+    // Output & Input
+    // ---------------------------------------------------------------------------------------------------
+    private static final class Output {
+
+        private byte[] buf;
+        private int    pos;
+
+        Output(int size) {
+            this.buf = new byte[size];
+        }
+
+        void header(byte oper, long node) {
+            this.write(MAGIC);
+            this.write(VERSION);
+            this.write(oper);
+            this.writeVarLong(node);
+        }
+
+        void write(int b) {
+            this.ensure(1);
+            this.buf[this.pos++] = (byte) b;
+        }
+
+        void writeVarLong(long val) {
+            this.ensure(10);
+            while ((val & ~0x7FL) != 0) {
+                this.buf[this.pos++] = (byte) ((val & 0x7F) | 0x80);
+                val >>>= 7;
+            }
+            this.buf[this.pos++] = (byte) val;
+        }
+
+        void writeLong(long val) {
+            this.ensure(8);
+            Utils.putLong(this.buf, this.pos, val);
+            this.pos += 8;
+        }
+
+        void writeString(String val) {
+            if (null == val) {
+                this.writeVarLong(0);
+                return;
+            }
+            byte[] bytes = val.getBytes(UTF_8);
+            this.writeVarLong(bytes.length + 1);
+            this.ensure(bytes.length);
+            System.arraycopy(bytes, 0, this.buf, this.pos, bytes.length);
+            this.pos += bytes.length;
+        }
+
+        void writeStrings(List<String> vals) {
+            if (null == vals) {
+                this.writeVarLong(0);
+                return;
+            }
+            this.writeVarLong(vals.size());
+            for (String val : vals) {
+                this.writeString(val);
+            }
+        }
+
+        void writeKeys(Map<String, List<String>> keys) {
+            this.writeVarLong(keys.size());
+            for (Map.Entry<String, List<String>> entry : keys.entrySet()) {
+                this.writeString(entry.getKey());
+                this.writeStrings(entry.getValue());
+            }
+        }
+
+        byte[] toBytes() {
+            byte[] bytes = new byte[this.pos];
+            System.arraycopy(this.buf, 0, bytes, 0, this.pos);
+            return bytes;
+        }
+
+        private void ensure(int length) {
+            if (this.pos + length > this.buf.length) {
+                byte[] grown = new byte[Math.max(this.buf.length * 2, this.pos + length)];
+                System.arraycopy(this.buf, 0, grown, 0, this.pos);
+                this.buf = grown;
+            }
+        }
+
+    }
+
+    private static final class Input {
+
+        private final byte[] buf;
+        private int          pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        int read() {
+            this.require(1);
+            return this.buf[this.pos++];
+        }
+
+        long readVarLong() {
+            long val = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                this.require(1);
+                byte b = this.buf[this.pos++];
+                val |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return val;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        long readLong() {
+            this.require(8);
+            long val = 0;
+            for (int i = 0; i < 8; i++) {
+                val = (val << 8) | (this.buf[this.pos++] & 0xFF);
+            }
+            return val;
+        }
+
+        int remaining() {
+            return this.buf.length - this.pos;
+        }
+
+        int readVarInt() {
+            return (int) this.readVarLong();
+        }
+
+        String readString() {
+            int length = this.readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            this.require(length);
+            String val = new String(this.buf, this.pos, length, UTF_8);
+            this.pos += length;
+            return val;
+        }
+
+        List<String> readStrings() {
+            int size = this.readVarInt();
+            // 每个字符串至少占1字节
+            this.require(size);
+            List<String> vals = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                vals.add(this.readString());
+            }
+            return vals;
+        }
+
+        void readKeys(Map<String, List<String>> keys) {
+            int size = this.readVarInt();
+            for (int i = 0; i < size; i++) {
+                keys.put(this.readString(), this.readStrings());
+            }
+        }
+
+        private void require(int length) {
+            if (length < 0 || length > this.buf.length - this.pos) {
+                throw new IllegalArgumentException("truncated command at " + this.pos + ", required " + length + " of " + this.buf.length);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.smart.cache;
+
+/**
+ * LeaseConfig
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 加载租约配置.多节点同时未命中同一缓存时,仅获得租约(SET NX PX)的节点执行加载,其余节点等待加载结果或返回旧值.
+ *
+ * @author YRain
+ */
+public class LeaseConfig {
+
+    // 租约有效时间(毫秒),加载超过该时间后其他节点可重新获取租约
+    private int leaseMillis  = 3000;
+    // 未获得租约时等待加载结果的最长时间(毫秒),超时后自行加载
+    private int waitMillis   = 1000;
+    // 本地缓存删除后旧值保留时间(秒),未获得租约时直接返回旧值.0为不使用旧值,不超过本地缓存过期时间
+    private int staleSeconds = 60;
+
+    public LeaseConfig() {
+    }
+
+    public LeaseConfig(int leaseMillis, int waitMillis, int staleSeconds) {
+        this.leaseMillis = leaseMillis;
+        this.waitMillis = waitMillis;
+        this.staleSeconds = staleSeconds;
+    }
+
+    public int getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void setLeaseMillis(int leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    public int getWaitMillis() {
+        return waitMillis;
+    }
+
+    public void setWaitMillis(int waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    public int getStaleSeconds() {
+        return staleSeconds;
+    }
+
+    public void setStaleSeconds(int staleSeconds) {
+        this.staleSeconds = staleSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaseConfig [leaseMillis=" + leaseMillis + ", waitMillis=" + waitMillis + ", staleSeconds=" + staleSeconds + "]";
+    }
+
+}
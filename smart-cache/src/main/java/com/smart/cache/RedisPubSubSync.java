@@ -1,54 +1,438 @@
 package com.smart.cache;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.smart.cache.Cache.Level;
+import com.smart.cache.local.PersistentLocalStore;
 import com.smart.jedis.JedisTemplate;
 
 import redis.clients.jedis.BinaryJedisPubSub;
-import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
 
 /**
  * RedisPubSubSync
  * -----------------------------------------------------------------------------------------------------------------------------------
- * 
+ * 以Redis Pub/Sub发送同步命令.订阅使用不属于连接池的独立连接,断开后按1秒起倍增至syncReconnectMaxSeconds的间隔重连.
+ * 每syncHeartbeatSeconds向本节点的心跳频道发布心跳,未及时收到时状态为lagging,超过3个间隔时断开重连.
+ * 重连后比较失效纪元,仅删除断开期间有写入的缓存名称的本地缓存;未维护纪元时清空全部本地缓存.
+ *
  * @author YRain
  */
-public class RedisPubSubSync extends JedisPubSub implements CacheSync {
+public class RedisPubSubSync implements CacheSync {
+
+    public static final Logger         logger               = LoggerFactory.getLogger(RedisPubSubSync.class);
 
-    public static final Logger logger = LoggerFactory.getLogger(RedisPubSubSync.class);
+    // 重连的初始退避间隔
+    private static final long          RECONNECT_MIN_MILLIS = 1000;
+    // 未收到心跳的间隔数超过该值时断开重连
+    private static final int           HEARTBEAT_TIMEOUTS   = 3;
+    // 关闭时等待最后一次心跳的时间
+    private static final long          CONFIRM_WAIT_MILLIS  = 1000;
 
-    private CacheTemplate      cacheTemplate;
-    private JedisTemplate      jedisTemplate;
-    private CacheSyncHandler   cacheSyncHandler;
+    private CacheTemplate              cacheTemplate;
+    private JedisTemplate              jedisTemplate;
+    private CacheSyncHandler           cacheSyncHandler;
+    private CacheSyncExecutor          cacheSyncExecutor;
+    // 同步命令合并发送,syncBatchWindowMillis大于0时启用
+    private CommandBatcher             batcher;
+    private final CacheStats           stats;
+    // 本节点的心跳频道
+    private final String               heartbeat;
+    // 订阅的频道:同步频道,心跳频道
+    private final byte[][]             channels;
+    private volatile boolean           running              = true;
+    // 当前订阅使用的独立连接
+    private volatile Jedis             connection;
+    // 是否已订阅成功且未断开
+    private volatile boolean           connected;
+    // 是否曾订阅成功,此后的订阅为重连
+    private volatile boolean           subscribed;
+    private volatile long              backoff              = RECONNECT_MIN_MILLIS;
+    // 已发布未收到的心跳发布时间,0为无
+    private volatile long              heartbeatAt;
+    // 发布心跳前读取的纪元,收到该心跳后成为已确认纪元
+    private volatile Map<String, Long> pendingEpochs;
+    // 已确认收到此前所有同步命令的纪元,重连后与Redis中的纪元比较,未维护纪元时为null
+    private volatile Map<String, Long> confirmedEpochs;
+    private final Thread               subscriber;
+    private ScheduledExecutorService   heartbeatExecutor;
 
     public RedisPubSubSync(final CacheTemplate cacheTemplate) {
         this.cacheTemplate = cacheTemplate;
         this.cacheSyncHandler = new CacheSyncHandler(this.cacheTemplate);
+        this.cacheSyncExecutor = new CacheSyncExecutor(this.cacheTemplate, this.cacheSyncHandler, cacheTemplate.getSyncHandlerThreads(), cacheTemplate.getSyncHandlerQueueSize());
         this.jedisTemplate = cacheTemplate.getJedisTemplate();
+        this.stats = cacheTemplate.getStats();
+        this.heartbeat = Cache.CACHE_STORE_SYNC + cacheTemplate.getSpliter() + "heartbeat" + cacheTemplate.getSpliter() + Cache.NODE;
+        this.channels = new byte[][] { this.jedisTemplate.serializeKey(Cache.CACHE_STORE_SYNC), this.jedisTemplate.serializeKey(this.heartbeat) };
+        if (cacheTemplate.getSyncBatchWindowMillis() > 0) {
+            this.batcher = new CommandBatcher(this, cacheTemplate.getSyncBatchWindowMillis(), cacheTemplate.getSyncBatchMaxKeys());
+        }
 
-        new Thread(new Runnable() {
+        this.subscriber = new Thread(new Runnable() {
             @Override
             public void run() {
-                jedisTemplate.subscribe(new BinaryJedisPubSub() {
-                    @Override
-                    public void onMessage(byte[] channel, byte[] message) {
-                        Command cmd = jedisTemplate.deserializeVal(message);
-                        if (cmd != null) {
-                            if ((cmd.src != null && !cmd.src.equals(Cache.ID)) || cmd.oper == Command.OPT_FETCH) {
-                                logger.debug("recieve from " + cmd.src + " > " + cmd.toString());
-                                cacheSyncHandler.handle(cmd);
-                            }
-                        }
-                    }
-                }, Cache.CACHE_STORE_SYNC);
+                subscribe();
             }
-        }, "RedisPubSubSync.Subscribe").start();
+        }, "RedisPubSubSync.Subscribe");
+        this.subscriber.setDaemon(true);
+        this.subscriber.start();
+
+        if (cacheTemplate.getSyncHeartbeatSeconds() > 0) {
+            this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("RedisPubSubSync.Heartbeat-%d").setDaemon(true).build());
+            this.heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        heartbeat();
+                    } catch (Exception e) {
+                        logger.warn("heartbeat > failed", e);
+                    }
+                }
+            }, cacheTemplate.getSyncHeartbeatSeconds(), cacheTemplate.getSyncHeartbeatSeconds(), TimeUnit.SECONDS);
+        }
     }
 
     @Override
     public void sendCommand(Command command) {
-        this.jedisTemplate.publish(Cache.CACHE_STORE_SYNC, this.jedisTemplate.serializeVal(command));
+        if (!this.cacheTemplate.isSyncFrameEnabled() && (command.oper == Command.OPT_MSET || command.oper == Command.OPT_MDEL)) {
+            // 旧版本节点不识别批量命令,拆分为逐个Key的命令,以管道单次往返发布
+            List<byte[]> messages = Lists.newArrayList();
+            for (String key : command.keys) {
+                messages.add(this.encode(command.oper == Command.OPT_MSET ? Command.set(command.name, key) : Command.del(command.name, key)));
+            }
+            this.jedisTemplate.mpublish(Cache.CACHE_STORE_SYNC, messages);
+        } else if (this.batcher == null || command.oper == Command.OPT_FETCH) {
+            this.jedisTemplate.publish(Cache.CACHE_STORE_SYNC, this.encode(command));
+        } else {
+            this.batcher.add(command);
+        }
+    }
+
+    /**
+     * 发送合并后的同步命令,发布失败时重试一次
+     */
+    public void sendBatch(CommandBatch batch) {
+        byte[] message = CommandCodec.encode(batch);
+        RuntimeException failure = null;
+        try {
+            this.jedisTemplate.publish(Cache.CACHE_STORE_SYNC, message);
+        } catch (RuntimeException e) {
+            logger.warn("sendBatch > publish failed, retry", e);
+            try {
+                this.jedisTemplate.publish(Cache.CACHE_STORE_SYNC, message);
+            } catch (RuntimeException retry) {
+                failure = retry;
+            }
+        }
+        // 发布后递增合并命令涉及名称的失效纪元.发布失败时同样递增,未收到的节点重连或恢复快照时据此删除本地缓存
+        Set<String> names = Sets.newLinkedHashSet(batch.rems.keySet());
+        names.addAll(batch.sets.keySet());
+        names.addAll(batch.dels.keySet());
+        this.cacheTemplate.incrEpochs(names, batch.cls);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 立即发送合并中的同步命令
+     */
+    public void flush() {
+        if (this.batcher != null) {
+            this.batcher.flush();
+        }
+    }
+
+    /**
+     * 发送合并中的同步命令并停止合并,确认纪元后断开订阅,等待已接收的命令执行完成
+     */
+    public void shutdown() {
+        if (this.batcher != null) {
+            this.batcher.shutdown();
+        }
+        if (this.heartbeatExecutor != null) {
+            this.heartbeatExecutor.shutdownNow();
+        }
+        this.confirm();
+        this.running = false;
+        this.subscriber.interrupt();
+        Jedis jedis = this.connection;
+        if (jedis != null) {
+            jedis.disconnect();
+        }
+        this.cacheSyncExecutor.shutdown();
+    }
+
+    /**
+     * 订阅是否正常
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    public CommandBatcher getBatcher() {
+        return batcher;
+    }
+
+    public CacheSyncExecutor getCacheSyncExecutor() {
+        return cacheSyncExecutor;
+    }
+
+    /**
+     * 已确认收到此前所有同步命令的纪元,未维护纪元或未确认时为null
+     */
+    public Map<String, Long> getConfirmedEpochs() {
+        return confirmedEpochs;
+    }
+
+    /**
+     * 编码同步命令,供Lua脚本写入时一并发布.未启用syncFrameEnabled时以序列化格式编码,兼容旧版本节点
+     */
+    public byte[] encode(Command command) {
+        if (!this.cacheTemplate.isSyncFrameEnabled()) {
+            return this.jedisTemplate.serializeVal(command);
+        }
+        return CommandCodec.encode(command);
+    }
+
+    /**
+     * 解码同步命令,本节点发出的命令(fetch除外)仅读取消息头即丢弃,返回null.兼容旧版本节点以序列化方式发送的Command
+     */
+    public Object decode(byte[] message) {
+        if (CommandCodec.isCommand(message)) {
+            byte oper = CommandCodec.getOper(message);
+            if (oper != Command.OPT_FETCH && CommandCodec.getNode(message) == Cache.NODE) {
+                return null;
+            }
+            Object msg = CommandCodec.decode(message);
+            if (msg == null) {
+                logger.warn("decode > Unsupported Command version " + message[1]);
+            }
+            return msg;
+        }
+        Object msg = this.jedisTemplate.deserializeVal(message);
+        if (msg instanceof Command) {
+            Command cmd = (Command) msg;
+            if ((cmd.src != null && !cmd.src.equals(Cache.ID)) || cmd.oper == Command.OPT_FETCH) {
+                return cmd;
+            }
+        }
+        return null;
+    }
+
+    //
+    // subscribe
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 以独立连接订阅同步频道与心跳频道,断开后退避重连,直至shutdown
+     */
+    private void subscribe() {
+        while (this.running) {
+            Jedis jedis = null;
+            try {
+                jedis = this.jedisTemplate.newJedis();
+                this.connection = jedis;
+                jedis.subscribe(this.newListener(), this.channels);
+            } catch (Exception e) {
+                if (this.running) {
+                    logger.warn("subscribe > " + Cache.CACHE_STORE_SYNC + " disconnected, reconnect in " + this.backoff + "ms", e);
+                }
+            } finally {
+                this.onDisconnected(jedis);
+            }
+            if (!this.running) {
+                break;
+            }
+            try {
+                Thread.sleep(this.backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.backoff = Math.min(this.backoff * 2, Math.max(RECONNECT_MIN_MILLIS, this.cacheTemplate.getSyncReconnectMaxSeconds() * 1000L));
+        }
+    }
+
+    private BinaryJedisPubSub newListener() {
+        return new BinaryJedisPubSub() {
+            @Override
+            public void onSubscribe(byte[] channel, int subscribedChannels) {
+                if (subscribedChannels == 2) {
+                    onConnected();
+                }
+            }
+
+            @Override
+            public void onMessage(byte[] channel, byte[] message) {
+                // 异常会中断订阅循环并断开重连,无法解析或执行的消息记录后丢弃
+                try {
+                    if (Arrays.equals(channel, channels[1])) {
+                        onHeartbeat(message);
+                        return;
+                    }
+                    Object msg = decode(message);
+                    if (msg instanceof CommandBatch) {
+                        logger.debug("recieve from " + ((CommandBatch) msg).node + " > " + msg.toString());
+                        cacheSyncExecutor.execute((CommandBatch) msg);
+                    } else if (msg instanceof Command) {
+                        Command cmd = (Command) msg;
+                        logger.debug("recieve from " + (cmd.src == null ? cmd.node : cmd.src) + " > " + cmd.toString());
+                        cacheSyncExecutor.execute(cmd);
+                    }
+                } catch (Exception e) {
+                    logger.warn("onMessage > " + message.length + " bytes dropped", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 订阅成功.重连时先补偿断开期间的写入,再记录当前纪元
+     */
+    private void onConnected() {
+        this.backoff = RECONNECT_MIN_MILLIS;
+        this.heartbeatAt = 0;
+        Map<String, Long> epochs = null;
+        try {
+            if (this.subscribed) {
+                this.stats.recordSyncReconnect();
+                epochs = this.resync();
+            } else {
+                epochs = this.readEpochs();
+            }
+        } catch (Exception e) {
+            logger.warn("subscribe > read epochs failed, clear local cache", e);
+            this.cacheTemplate.cls(Level.Local);
+            this.stats.recordSyncResync(1);
+        }
+        this.confirmedEpochs = epochs;
+        this.subscribed = true;
+        this.connected = true;
+        this.stats.recordSyncState(CacheStats.SYNC_CONNECTED, 0);
+        logger.info("subscribe > " + Cache.CACHE_STORE_SYNC + " connected, node:" + Cache.NODE);
+    }
+
+    private void onDisconnected(Jedis jedis) {
+        this.connected = false;
+        this.connection = null;
+        this.heartbeatAt = 0;
+        this.stats.recordSyncState(CacheStats.SYNC_DISCONNECTED, 0);
+        if (jedis != null) {
+            try {
+                jedis.close();
+            } catch (Exception e) {
+                // ignore...
+            }
+        }
+    }
+
+    /**
+     * 比较已确认纪元与Redis中的当前纪元,删除纪元变化的缓存名称的本地缓存,全局纪元变化(cls)时清空全部本地缓存.返回当前纪元
+     */
+    private Map<String, Long> resync() {
+        Map<String, Long> known = this.confirmedEpochs;
+        Map<String, Long> epochs = this.readEpochs();
+        if (known == null || epochs == null || !known.get(PersistentLocalStore.GLOBAL).equals(epochs.get(PersistentLocalStore.GLOBAL))) {
+            logger.info("resync > " + (epochs == null ? "epoch disabled" : "epochs unknown or cls since disconnected") + ", clear local cache");
+            this.cacheTemplate.cls(Level.Local);
+            this.stats.recordSyncResync(1);
+            return epochs;
+        }
+        int removed = 0;
+        for (Map.Entry<String, Long> entry : epochs.entrySet()) {
+            if (!PersistentLocalStore.GLOBAL.equals(entry.getKey()) && !entry.getValue().equals(known.get(entry.getKey()))) {
+                this.cacheTemplate.rem(entry.getKey(), Level.Local);
+                removed++;
+            }
+        }
+        // 断线期间可能错过rem命令,刷新代际号
+        this.cacheTemplate.refreshGenerations();
+        logger.info("resync > names:" + (epochs.size() - 1) + ",removed:" + removed);
+        this.stats.recordSyncResync(removed);
+        return epochs;
+    }
+
+    /**
+     * 读取本地缓存中各名称及全局的纪元,未维护纪元时返回null
+     */
+    private Map<String, Long> readEpochs() {
+        if (!this.cacheTemplate.isEpochEnabled()) {
+            return null;
+        }
+        return this.cacheTemplate.getEpochs(this.cacheTemplate.getLocalStore().names());
+    }
+
+    //
+    // heartbeat
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 上次心跳已收到时读取纪元并发布新的心跳;未收到时标记为lagging,超时后断开连接,由订阅线程重连
+     */
+    private void heartbeat() {
+        Jedis jedis = this.connection;
+        if (!this.connected || jedis == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long sent = this.heartbeatAt;
+        if (sent > 0) {
+            long lag = now - sent;
+            this.stats.recordSyncState(CacheStats.SYNC_LAGGING, lag);
+            if (lag >= HEARTBEAT_TIMEOUTS * this.cacheTemplate.getSyncHeartbeatSeconds() * 1000L) {
+                logger.warn("heartbeat > " + Cache.CACHE_STORE_SYNC + " no heartbeat for " + lag + "ms, reconnect");
+                jedis.disconnect();
+            }
+            return;
+        }
+        this.heartbeatAt = now;
+        // 纪元须在发布心跳前读取:收到心跳时,此前写入发布的同步命令均已收到
+        this.pendingEpochs = this.readEpochs();
+        this.jedisTemplate.publish(this.heartbeat, SafeEncoder.encode(String.valueOf(now)));
+    }
+
+    /**
+     * 关闭前发布心跳并等待收到,使已确认纪元包含此前写入的所有缓存名称
+     */
+    private void confirm() {
+        if (!this.connected || !this.cacheTemplate.isEpochEnabled()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            this.pendingEpochs = this.readEpochs();
+            this.heartbeatAt = now;
+            this.jedisTemplate.publish(this.heartbeat, SafeEncoder.encode(String.valueOf(now)));
+            while (this.heartbeatAt == now && System.currentTimeMillis() - now < CONFIRM_WAIT_MILLIS) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("confirm > failed", e);
+        }
+    }
+
+    private void onHeartbeat(byte[] message) {
+        long sent = Long.parseLong(SafeEncoder.encode(message));
+        if (sent != this.heartbeatAt) {
+            return;
+        }
+        this.confirmedEpochs = this.pendingEpochs;
+        this.heartbeatAt = 0;
+        this.stats.recordSyncState(CacheStats.SYNC_CONNECTED, System.currentTimeMillis() - sent);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package com.smart.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.smart.cache.Cache.Level;
+import com.smart.jedis.JedisTemplate;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * RedisStreamSync
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 以Redis Stream(5.0+)发送同步命令.写入时XADD并按syncStreamMaxLength近似裁剪,各节点记录已读取的最后id,
+ * 连接中断或读取线程异常后从该id继续读取,补偿中断期间的命令;若该id之后的命令已被裁剪(或流被删除),清空本地缓存.
+ * 命令以Lua脚本读写,已读取至最新时以独立连接XREAD BLOCK等待新命令(至多syncStreamBlockMillis),有新命令或超时后再以脚本读取.
+ *
+ * @author YRain
+ */
+public class RedisStreamSync implements CacheSync {
+
+    public static final Logger  logger       = LoggerFactory.getLogger(RedisStreamSync.class);
+
+    // 读取异常后的重试间隔
+    private static final long   RETRY_MILLIS = 1000;
+    // 从头读取的起始id
+    private static final String ZERO_ID      = "0-0";
+    private static final byte[] XREAD        = SafeEncoder.encode("XREAD");
+    private static final byte[] BLOCK        = SafeEncoder.encode("BLOCK");
+    private static final byte[] COUNT        = SafeEncoder.encode("COUNT");
+    private static final byte[] ONE          = SafeEncoder.encode("1");
+    private static final byte[] STREAMS      = SafeEncoder.encode("STREAMS");
+
+    private CacheTemplate       cacheTemplate;
+    private JedisTemplate       jedisTemplate;
+    private CacheSyncHandler    cacheSyncHandler;
+    private CacheSyncExecutor   cacheSyncExecutor;
+    private final byte[]        stream;
+    // 已读取的最后id
+    private volatile String     lastId;
+    private volatile boolean    running      = true;
+    // 等待新命令的独立连接,仅由读取线程使用
+    private volatile Jedis      connection;
+    private final Thread        reader;
+
+    public RedisStreamSync(final CacheTemplate cacheTemplate) {
+        this.cacheTemplate = cacheTemplate;
+        this.cacheSyncHandler = new CacheSyncHandler(this.cacheTemplate);
+        this.cacheSyncExecutor = new CacheSyncExecutor(this.cacheTemplate, this.cacheSyncHandler, cacheTemplate.getSyncHandlerThreads(), cacheTemplate.getSyncHandlerQueueSize());
+        this.jedisTemplate = cacheTemplate.getJedisTemplate();
+        this.stream = this.jedisTemplate.serializeKey(Cache.CACHE_STREAM);
+        try {
+            this.lastId = this.tail();
+        } catch (Exception e) {
+            // Redis 5.0以下不支持XRANGE等命令,启动时即失败
+            throw new IllegalStateException("read " + Cache.CACHE_STREAM + " failed, syncType stream requires Redis 5.0+", e);
+        }
+
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        if (!poll()) {
+                            await();
+                        }
+                    } catch (Exception e) {
+                        if (!running) {
+                            break;
+                        }
+                        logger.warn("read > " + Cache.CACHE_STREAM + " from " + lastId + " failed, retry in " + RETRY_MILLIS + "ms", e);
+                        closeConnection();
+                        try {
+                            Thread.sleep(RETRY_MILLIS);
+                        } catch (InterruptedException ie) {
+                            break;
+                        }
+                    }
+                }
+                closeConnection();
+            }
+        }, "RedisStreamSync.Read");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public void sendCommand(Command command) {
+        List<byte[]> args = this.args(String.valueOf(this.cacheTemplate.getSyncStreamMaxLength()));
+        args.add(CommandCodec.encode(command));
+        this.jedisTemplate.evalsha(CacheScripts.STREAM_ADD, Collections.singletonList(this.stream), args);
+    }
+
+    /**
+     * 停止读取,等待已接收的命令执行完成
+     */
+    public void shutdown() {
+        this.running = false;
+        this.reader.interrupt();
+        Jedis jedis = this.connection;
+        if (jedis != null) {
+            jedis.disconnect();
+        }
+        this.cacheSyncExecutor.shutdown();
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public CacheSyncExecutor getCacheSyncExecutor() {
+        return cacheSyncExecutor;
+    }
+
+    //
+    // read
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 读取并执行lastId之后的一批命令,返回是否读取满一批(可能还有未读取的命令)
+     */
+    private boolean poll() {
+        List<byte[]> result = this.read(this.lastId);
+        if (result.isEmpty()) {
+            if (!ZERO_ID.equals(this.lastId)) {
+                this.onGap(ZERO_ID, "stream not exists");
+            }
+            return false;
+        }
+        String first = SafeEncoder.encode(result.get(0));
+        if (!ZERO_ID.equals(this.lastId) && compare(first, this.lastId) > 0) {
+            this.onGap(this.tail(), "trimmed to " + first);
+            return false;
+        }
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            byte[] message = result.get(i + 1);
+            if (CommandCodec.isCommand(message) && (CommandCodec.getOper(message) == Command.OPT_FETCH || CommandCodec.getNode(message) != Cache.NODE)) {
+                Object msg = CommandCodec.decode(message);
+                if (msg instanceof Command) {
+                    logger.debug("recieve from " + ((Command) msg).node + " > " + msg.toString());
+                    this.cacheSyncExecutor.execute((Command) msg);
+                } else if (msg instanceof CommandBatch) {
+                    logger.debug("recieve from " + ((CommandBatch) msg).node + " > " + msg.toString());
+                    this.cacheSyncExecutor.execute((CommandBatch) msg);
+                }
+            }
+            this.lastId = SafeEncoder.encode(result.get(i));
+        }
+        return result.size() / 2 >= this.cacheTemplate.getSyncStreamBatchSize();
+    }
+
+    /**
+     * 以独立连接XREAD BLOCK等待lastId之后的新命令,有新命令或超时后返回,命令本身由poll以脚本读取并检查是否被裁剪.
+     * 集群模式下按MOVED重定向连接至流所在节点
+     */
+    private void await() {
+        long block = Math.max(1, this.cacheTemplate.getSyncStreamBlockMillis());
+        Jedis jedis = this.connection;
+        if (jedis == null) {
+            jedis = this.jedisTemplate.newJedis();
+            this.connection = jedis;
+        }
+        // 读取超时须长于阻塞时间
+        jedis.getClient().setSoTimeout((int) Math.min(Integer.MAX_VALUE, block + Math.max(1000, jedis.getClient().getConnectionTimeout())));
+        try {
+            JedisTemplate.sendCommand(jedis, XREAD, COUNT, ONE, BLOCK, SafeEncoder.encode(String.valueOf(block)), STREAMS, this.stream, SafeEncoder.encode(this.lastId));
+        } catch (JedisMovedDataException e) {
+            this.closeConnection();
+            this.connection = this.jedisTemplate.newJedis(e.getTargetNode());
+        }
+    }
+
+    private void closeConnection() {
+        Jedis jedis = this.connection;
+        this.connection = null;
+        if (jedis != null) {
+            try {
+                jedis.close();
+            } catch (Exception e) {
+                // ignore...
+            }
+        }
+    }
+
+    /**
+     * lastId之后的命令已丢失,清空本地缓存并从id继续读取
+     */
+    private void onGap(String id, String reason) {
+        logger.warn("read > " + Cache.CACHE_STREAM + " missed commands after " + this.lastId + " (" + reason + "), clear local cache");
+        this.cacheTemplate.cls(Level.Local);
+        this.lastId = id;
+    }
+
+    /**
+     * 当前最新id,流不存在时为0-0
+     */
+    private String tail() {
+        List<byte[]> result = this.read("");
+        return result.size() < 2 ? ZERO_ID : SafeEncoder.encode(result.get(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<byte[]> read(String id) {
+        List<byte[]> args = this.args(id);
+        args.add(SafeEncoder.encode(String.valueOf(this.cacheTemplate.getSyncStreamBatchSize())));
+        return (List<byte[]>) this.jedisTemplate.evalsha(CacheScripts.STREAM_READ, Collections.singletonList(this.stream), args);
+    }
+
+    private List<byte[]> args(String first) {
+        return Lists.newArrayList(SafeEncoder.encode(first));
+    }
+
+    /**
+     * 比较Stream id(毫秒-序号)
+     */
+    private static int compare(String id1, String id2) {
+        int i1 = id1.indexOf('-');
+        int i2 = id2.indexOf('-');
+        long ms1 = Long.parseLong(id1.substring(0, i1));
+        long ms2 = Long.parseLong(id2.substring(0, i2));
+        if (ms1 != ms2) {
+            return ms1 < ms2 ? -1 : 1;
+        }
+        long seq1 = Long.parseLong(id1.substring(i1 + 1));
+        long seq2 = Long.parseLong(id2.substring(i2 + 1));
+        return seq1 < seq2 ? -1 : (seq1 == seq2 ? 0 : 1);
+    }
+
+}
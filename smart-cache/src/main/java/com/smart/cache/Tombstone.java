@@ -0,0 +1,51 @@
+package com.smart.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Tombstone
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 空值标记,表示缓存值确定不存在.本地缓存中保存单例,Redis中以2字节标记保存,过期时间较短.
+ *
+ * @author YRain
+ */
+public final class Tombstone implements Serializable {
+
+    private static final long     serialVersionUID = -2956127392474113537L;
+
+    public static final Tombstone INSTANCE         = new Tombstone();
+
+    // Redis中的标记
+    private static final byte[]   MARKER           = new byte[] { (byte) 0xCA, (byte) 0xE0 };
+
+    private Tombstone() {
+    }
+
+    /**
+     * Redis中保存的标记
+     */
+    public static byte[] marker() {
+        return MARKER.clone();
+    }
+
+    /**
+     * 是否为Redis中的标记
+     */
+    public static boolean isMarker(byte[] bytes) {
+        return Arrays.equals(MARKER, bytes);
+    }
+
+    /**
+     * 本地缓存copyOnRead反序列化后仍返回单例
+     */
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "Tombstone";
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.smart.cache.local;
+
+/**
+ * CopyPolicy
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 本地缓存值的复制策略
+ *
+ * @author YRain
+ */
+public enum CopyPolicy {
+
+    /**
+     * 保存与返回原对象,无复制.仅适用于调用方不会修改的不可变值
+     */
+    IDENTITY,
+
+    /**
+     * 写入时序列化保存字节,读取时反序列化一次返回,外部修改不影响缓存
+     */
+    COPY,
+
+    /**
+     * 与COPY相同,保留以兼容已有配置
+     */
+    @Deprecated
+    BYTES
+
+}
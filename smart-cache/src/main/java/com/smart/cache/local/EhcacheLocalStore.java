@@ -0,0 +1,323 @@
+package com.smart.cache.local;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.smart.util.Strings;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.store.FifoPolicy;
+import net.sf.ehcache.store.LfuPolicy;
+import net.sf.ehcache.store.LruPolicy;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import net.sf.ehcache.store.Policy;
+
+/**
+ * EhcacheLocalStore
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 基于Ehcache的一级缓存存储.每个缓存名称对应一个Ehcache,LRU淘汰,超出堆内存上限时溢出到磁盘.
+ * 按缓存名称配置内存大小时从共享内存池中划分;配置元素数量时(Ehcache不允许与内存池共用)由不设内存池,不溢出到磁盘的独立CacheManager管理.
+ * 容量与淘汰策略于运行时动态修改,容量计量方式变化时丢弃该名称已有元素并按新配置重新创建.
+ *
+ * @author YRain
+ */
+public class EhcacheLocalStore implements LocalStore {
+
+    // 默认缓存不限制元素数量时,独立CacheManager的默认值
+    private static final int                                 DEFAULT_MAX_ENTRIES = 10000;
+
+    private final CacheManager                               cacheManager;
+    // 按元素数量限制容量的缓存
+    private final CacheManager                               entriesCacheManager;
+    private final ConcurrentHashMap<String, Future<Ehcache>> ehcaches            = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LocalConfig>     configs             = new ConcurrentHashMap<>();
+
+    /**
+     * @param id 缓存管理器名称
+     * @param diskStorePath 磁盘存储路径
+     * @param maxBytesLocalHeap 堆内存上限
+     * @param maxBytesLocalDisk 磁盘上限
+     * @param timeToLiveSeconds 默认过期时间
+     * @param diskExpiryThreadIntervalSeconds 磁盘过期清理间隔
+     */
+    public EhcacheLocalStore(String id, String diskStorePath, String maxBytesLocalHeap, String maxBytesLocalDisk, int timeToLiveSeconds, int diskExpiryThreadIntervalSeconds) {
+        Configuration configuration = new Configuration();
+        configuration.setName(id);
+        configuration.setMaxBytesLocalHeap(maxBytesLocalHeap);
+        configuration.setMaxBytesLocalDisk(maxBytesLocalDisk);
+        // DiskStore
+        DiskStoreConfiguration dsc = new DiskStoreConfiguration();
+        dsc.setPath(diskStorePath);
+        configuration.diskStore(dsc);
+        // DefaultCache
+        CacheConfiguration defaultCacheConfiguration = new CacheConfiguration();
+        defaultCacheConfiguration.setEternal(false);
+        defaultCacheConfiguration.setOverflowToDisk(true);
+        defaultCacheConfiguration.setDiskPersistent(false);
+        defaultCacheConfiguration.memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU);
+        defaultCacheConfiguration.setDiskExpiryThreadIntervalSeconds(diskExpiryThreadIntervalSeconds);
+        // 使用引用,由CacheTemplate按缓存名称的CopyPolicy复制,避免外部代码修改了缓存对象.
+        defaultCacheConfiguration.copyOnRead(false);
+        defaultCacheConfiguration.copyOnWrite(false);
+        defaultCacheConfiguration.setTimeToIdleSeconds(0);
+        defaultCacheConfiguration.setTimeToLiveSeconds(timeToLiveSeconds);
+        configuration.setDefaultCacheConfiguration(defaultCacheConfiguration);
+        configuration.setDynamicConfig(true);
+        configuration.setUpdateCheck(false);
+        this.cacheManager = new CacheManager(configuration);
+        // EntriesCacheManager
+        Configuration entriesConfiguration = new Configuration();
+        entriesConfiguration.setName(id + ".entries");
+        CacheConfiguration entriesCacheConfiguration = defaultCacheConfiguration.clone();
+        entriesCacheConfiguration.setOverflowToDisk(false);
+        entriesCacheConfiguration.setMaxEntriesLocalHeap(DEFAULT_MAX_ENTRIES);
+        entriesConfiguration.setDefaultCacheConfiguration(entriesCacheConfiguration);
+        entriesConfiguration.setDynamicConfig(true);
+        entriesConfiguration.setUpdateCheck(false);
+        this.entriesCacheManager = new CacheManager(entriesConfiguration);
+    }
+
+    @Override
+    public LocalEntry get(String name, String key) {
+        if (!this.ehcaches.containsKey(name)) {
+            return null;
+        }
+        return this.toEntry(this.getEhcache(name).get(key));
+    }
+
+    @Override
+    public LocalEntry getQuiet(String name, String key) {
+        if (!this.ehcaches.containsKey(name)) {
+            return null;
+        }
+        return this.toEntry(this.getEhcache(name).getQuiet(key));
+    }
+
+    @Override
+    public Map<String, LocalEntry> getAll(String name, Collection<String> keys) {
+        Map<String, LocalEntry> entries = Maps.newLinkedHashMap();
+        if (!this.ehcaches.containsKey(name)) {
+            return entries;
+        }
+        Map<Object, Element> elements = this.getEhcache(name).getAll(keys);
+        for (String key : keys) {
+            LocalEntry entry = this.toEntry(elements.get(key));
+            if (entry != null) {
+                entries.put(key, entry);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void put(String name, LocalEntry entry) {
+        this.getEhcache(name).put(this.toElement(entry));
+    }
+
+    @Override
+    public void putAll(String name, Collection<LocalEntry> entries) {
+        List<Element> elements = Lists.newArrayList();
+        for (LocalEntry entry : entries) {
+            elements.add(this.toElement(entry));
+        }
+        this.getEhcache(name).putAll(elements);
+    }
+
+    @Override
+    public void remove(String name, String key) {
+        if (this.ehcaches.containsKey(name)) {
+            this.getEhcache(name).remove(key);
+        }
+    }
+
+    @Override
+    public void removeAll(String name, Collection<String> keys) {
+        if (this.ehcaches.containsKey(name)) {
+            this.getEhcache(name).removeAll(keys);
+        }
+    }
+
+    @Override
+    public void clear(String name) {
+        if (this.ehcaches.containsKey(name)) {
+            this.getEhcache(name).removeAll();
+            this.ehcaches.remove(name);
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        this.cacheManager.clearAll();
+        this.entriesCacheManager.clearAll();
+        this.ehcaches.clear();
+    }
+
+    @Override
+    public Set<String> names() {
+        return Sets.newHashSet(this.ehcaches.keySet());
+    }
+
+    @Override
+    public Set<String> keys(String name) {
+        Set<String> keys = Sets.newHashSet();
+        if (this.ehcaches.containsKey(name)) {
+            for (Object key : this.getEhcache(name).getKeys()) {
+                keys.add((String) key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public void configure(String name, LocalConfig config) {
+        if (config == null) {
+            this.configs.remove(name);
+        } else {
+            this.configs.put(name, config);
+        }
+        for (CacheManager manager : new CacheManager[] { this.cacheManager, this.entriesCacheManager }) {
+            Ehcache cache = manager.getEhcache(name);
+            if (cache != null && !this.apply(manager, cache, config)) {
+                // 容量计量方式不可动态修改,按新配置重新创建
+                this.ehcaches.remove(name);
+                manager.removeCache(name);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.cacheManager.shutdown();
+        this.entriesCacheManager.shutdown();
+    }
+
+    /**
+     * 创建本地缓存
+     */
+    private Ehcache getEhcache(final String name) {
+        Future<Ehcache> future = this.ehcaches.get(name);
+        if (future == null) {
+            Callable<Ehcache> callable = new Callable<Ehcache>() {
+                @Override
+                public Ehcache call() throws Exception {
+                    LocalConfig config = configs.get(name);
+                    CacheManager manager = managerOf(config);
+                    Ehcache cache = manager.getEhcache(name);
+                    if (cache == null) {
+                        if (config == null) {
+                            manager.addCache(name);
+                        } else {
+                            manager.addCache(new Cache(newCacheConfiguration(manager, name, config)));
+                        }
+                        cache = manager.getEhcache(name);
+                    }
+                    return cache;
+                }
+            };
+            FutureTask<Ehcache> task = new FutureTask<>(callable);
+            future = this.ehcaches.putIfAbsent(name, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+        try {
+            return future.get();
+        } catch (Exception e) {
+            this.ehcaches.remove(name);
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * 仅配置元素数量时由entriesCacheManager管理
+     */
+    private CacheManager managerOf(LocalConfig config) {
+        if (config != null && Strings.isEmpty(config.getMaxBytes()) && config.getMaxEntries() > 0) {
+            return this.entriesCacheManager;
+        }
+        return this.cacheManager;
+    }
+
+    /**
+     * 以默认配置为基础创建缓存名称的配置
+     */
+    private CacheConfiguration newCacheConfiguration(CacheManager manager, String name, LocalConfig config) {
+        CacheConfiguration configuration = manager.getConfiguration().getDefaultCacheConfiguration().clone();
+        configuration.setName(name);
+        if (!Strings.isEmpty(config.getMaxBytes())) {
+            configuration.setMaxBytesLocalHeap(config.getMaxBytes());
+        } else if (config.getMaxEntries() > 0) {
+            configuration.setMaxEntriesLocalHeap(config.getMaxEntries());
+        }
+        if (!Strings.isEmpty(config.getEvictionPolicy())) {
+            configuration.setMemoryStoreEvictionPolicy(config.getEvictionPolicy());
+        }
+        return configuration;
+    }
+
+    /**
+     * 动态修改已创建缓存的容量与淘汰策略,容量计量方式变化时返回false
+     */
+    private boolean apply(CacheManager manager, Ehcache cache, LocalConfig config) {
+        if (manager != this.managerOf(config)) {
+            return false;
+        }
+        CacheConfiguration configuration = cache.getCacheConfiguration();
+        boolean bytes = configuration.getMaxBytesLocalHeap() > 0;
+        if (manager == this.entriesCacheManager) {
+            configuration.setMaxEntriesLocalHeap(config.getMaxEntries());
+        } else if (config != null && !Strings.isEmpty(config.getMaxBytes())) {
+            if (!bytes) {
+                return false;
+            }
+            configuration.setMaxBytesLocalHeap(config.getMaxBytes());
+        } else if (bytes) {
+            return false;
+        }
+        String policy = config == null || Strings.isEmpty(config.getEvictionPolicy()) ? LocalConfig.EVICTION_LRU : config.getEvictionPolicy();
+        if (cache instanceof Cache) {
+            ((Cache) cache).setMemoryStoreEvictionPolicy(this.toPolicy(MemoryStoreEvictionPolicy.fromString(policy)));
+        }
+        return true;
+    }
+
+    private Policy toPolicy(MemoryStoreEvictionPolicy policy) {
+        if (MemoryStoreEvictionPolicy.LFU.equals(policy)) {
+            return new LfuPolicy();
+        }
+        if (MemoryStoreEvictionPolicy.FIFO.equals(policy)) {
+            return new FifoPolicy();
+        }
+        return new LruPolicy();
+    }
+
+    private Element toElement(LocalEntry entry) {
+        // 保留创建时间,恢复的元素按原过期时间失效
+        return new Element(entry.getKey(), entry.getValue(), entry.getVersion(), entry.getCreationTime(), 0, 0, false, entry.getTtl(), 0, entry.getCreationTime());
+    }
+
+    private LocalEntry toEntry(Element element) {
+        if (element == null || element.getObjectValue() == null) {
+            return null;
+        }
+        return new LocalEntry((String) element.getObjectKey(), element.getObjectValue(), element.getTimeToLive(), element.getCreationTime(), element.getVersion());
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.smart.cache.local;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * FrequencySketch
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 访问频率估算(Count-Min Sketch).每个计数4位,上限15,每个元素占4行各1个计数,取最小值为估算频率.
+ * 累计递增次数达到采样数时所有计数减半,使频率随时间衰减.计数以CAS递增,无需加锁.
+ *
+ * @author YRain
+ */
+public class FrequencySketch {
+
+    private static final long[]  SEED       = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long    RESET_MASK = 0x7777777777777777L;
+    // 计数最大值,准入频率不能超过该值
+    public static final int      MAX_COUNT  = 15;
+
+    private final AtomicLongArray table;
+    private final int             tableMask;
+    // 采样数,为容量的10倍
+    private final int             sampleSize;
+    // 自上次衰减以来的递增次数
+    private final AtomicInteger   size      = new AtomicInteger();
+    private final AtomicBoolean   resetting = new AtomicBoolean();
+
+    /**
+     * @param maximumSize 预计元素数量
+     */
+    public FrequencySketch(long maximumSize) {
+        int capacity = (int) Math.max(16, Math.min(maximumSize, 1 << 30));
+        int length = Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = capacity <= Integer.MAX_VALUE / 10 ? capacity * 10 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 估算频率,0~15
+     */
+    public int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = this.indexOf(hash, i);
+            int count = (int) ((this.table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= this.incrementAt(this.indexOf(hash, i), start + i);
+        }
+        if (added && this.size.incrementAndGet() >= this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    /**
+     * 第i个long中第j个计数加1,已达上限返回false
+     */
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        for (;;) {
+            long value = this.table.get(i);
+            if ((value & mask) == mask) {
+                return false;
+            }
+            if (this.table.compareAndSet(i, value, value + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 所有计数减半.并发递增可能在减半期间丢失,不影响估算
+     */
+    private void reset() {
+        if (!this.resetting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < this.table.length(); i++) {
+                long value;
+                do {
+                    value = this.table.get(i);
+                } while (!this.table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+            }
+            this.size.set(this.size.get() >>> 1);
+        } finally {
+            this.resetting.set(false);
+        }
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & this.tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.smart.cache.local;
+
+import java.io.Serializable;
+
+/**
+ * LocalBytes
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 以CopyPolicy.COPY保存的序列化值.Ehcache溢出到磁盘时需可序列化
+ *
+ * @author YRain
+ */
+public final class LocalBytes implements Serializable {
+
+    private static final long serialVersionUID = 5520957417261130873L;
+
+    private final byte[]      bytes;
+
+    public LocalBytes(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalBytes [length=" + bytes.length + "]";
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.smart.cache.local;
+
+/**
+ * LocalConfig
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 按缓存名称的一级缓存配置.过期时间与是否启用由CacheTemplate处理,容量与淘汰策略由LocalStore处理,不支持的配置项忽略.
+ *
+ * @author YRain
+ */
+public class LocalConfig {
+
+    // 淘汰策略
+    public static final String EVICTION_LRU       = "LRU";
+    public static final String EVICTION_LFU       = "LFU";
+    public static final String EVICTION_FIFO      = "FIFO";
+
+    // 是否缓存于本地,false时仅使用远程缓存
+    private boolean            enabled            = true;
+    // 本地缓存过期时间(秒),0为使用localTimeToLiveSeconds
+    private int                timeToLiveSeconds  = 0;
+    // 最大元素数量,0为不限制,与maxBytes同时设置时maxBytes优先
+    private long               maxEntries         = 0;
+    // 最大内存大小,如64M,为空不限制
+    private String             maxBytes;
+    // 淘汰策略:LRU,LFU,FIFO,为空时使用存储默认策略
+    private String             evictionPolicy;
+    // 远程读取命中后写入本地缓存的准入频率(1~15,大于15按15处理),0为使用localAdmissionThreshold,1为不限制
+    private int                admissionThreshold = 0;
+
+    public LocalConfig() {
+    }
+
+    public LocalConfig(int timeToLiveSeconds, long maxEntries) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public String getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(String maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(String evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getAdmissionThreshold() {
+        return admissionThreshold;
+    }
+
+    public void setAdmissionThreshold(int admissionThreshold) {
+        this.admissionThreshold = Math.min(admissionThreshold, FrequencySketch.MAX_COUNT);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalConfig [enabled=" + enabled + ", timeToLiveSeconds=" + timeToLiveSeconds + ", maxEntries=" + maxEntries + ", maxBytes=" + maxBytes + ", evictionPolicy=" + evictionPolicy + ", admissionThreshold=" + admissionThreshold + "]";
+    }
+
+}
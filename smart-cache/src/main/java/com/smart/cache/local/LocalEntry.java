@@ -0,0 +1,85 @@
+package com.smart.cache.local;
+
+/**
+ * LocalEntry
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 本地缓存元素.创建后不可修改,覆盖时整体替换.
+ *
+ * @author YRain
+ */
+public class LocalEntry {
+
+    // 缓存Key
+    private final String key;
+    // 缓存值
+    private final Object value;
+    // 过期时间(秒),0为永久
+    private final int    ttl;
+    // 创建时间
+    private final long   creationTime;
+    // 远程缓存值的版本号,0为未知
+    private final long   version;
+
+    public LocalEntry(String key, Object value, int ttl) {
+        this(key, value, ttl, System.currentTimeMillis());
+    }
+
+    public LocalEntry(String key, Object value, int ttl, long creationTime) {
+        this(key, value, ttl, creationTime, 0);
+    }
+
+    public LocalEntry(String key, Object value, int ttl, long creationTime, long version) {
+        this.key = key;
+        this.value = value;
+        this.ttl = ttl;
+        this.creationTime = creationTime;
+        this.version = version;
+    }
+
+    /**
+     * 过期时刻,永久时为Long.MAX_VALUE
+     */
+    public long getExpirationTime() {
+        return ttl == 0 ? Long.MAX_VALUE : creationTime + ttl * 1000L;
+    }
+
+    /**
+     * 是否已过期
+     */
+    public boolean isExpired(long now) {
+        return ttl != 0 && now >= creationTime + ttl * 1000L;
+    }
+
+    /**
+     * 剩余时间(秒),0为永久
+     */
+    public int getRemain(long now) {
+        return ttl == 0 ? 0 : ttl - (int) ((now - creationTime) / 1000);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalEntry [key=" + key + ", value=" + value + ", ttl=" + ttl + ", creationTime=" + creationTime + ", version=" + version + "]";
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.smart.cache.local;
+
+/**
+ * LocalKey
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 缓存名称与key组成的存储Key,用于所有名称共享一张表的存储
+ *
+ * @author YRain
+ */
+class LocalKey {
+
+    final String      name;
+    final String      key;
+    private final int hash;
+
+    LocalKey(String name, String key) {
+        this.name = name;
+        this.key = key;
+        this.hash = 31 * name.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LocalKey)) {
+            return false;
+        }
+        LocalKey other = (LocalKey) obj;
+        return hash == other.hash && name.equals(other.name) && key.equals(other.key);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.smart.cache.local;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LocalStore
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 一级缓存存储.按缓存名称隔离,ttl规则由CacheTemplate决定,存储仅负责保存、过期与容量淘汰.
+ * 内置实现:EhcacheLocalStore(默认),TinyLfuLocalStore.
+ *
+ * @author YRain
+ */
+public interface LocalStore {
+
+    /**
+     * 获取缓存元素并记录访问,不存在或已过期返回null
+     */
+    LocalEntry get(String name, String key);
+
+    /**
+     * 获取缓存元素,不记录访问,不影响淘汰顺序
+     */
+    LocalEntry getQuiet(String name, String key);
+
+    /**
+     * 批量获取缓存元素,仅包含存在的key
+     */
+    Map<String, LocalEntry> getAll(String name, Collection<String> keys);
+
+    /**
+     * 设置缓存元素
+     */
+    void put(String name, LocalEntry entry);
+
+    /**
+     * 批量设置缓存元素
+     */
+    void putAll(String name, Collection<LocalEntry> entries);
+
+    /**
+     * 删除缓存元素
+     */
+    void remove(String name, String key);
+
+    /**
+     * 批量删除缓存元素
+     */
+    void removeAll(String name, Collection<String> keys);
+
+    /**
+     * 删除指定name下所有缓存元素
+     */
+    void clear(String name);
+
+    /**
+     * 删除所有缓存元素
+     */
+    void clearAll();
+
+    /**
+     * 当前存在缓存元素的名称
+     */
+    Set<String> names();
+
+    /**
+     * 指定name下的key(可能包含未清理的过期key)
+     */
+    Set<String> keys(String name);
+
+    /**
+     * 设置name的容量与淘汰策略,config为null时恢复默认.不支持的配置项忽略
+     */
+    void configure(String name, LocalConfig config);
+
+    /**
+     * 关闭
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,380 @@
+package com.smart.cache.local;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.smart.serializer.Serializer;
+
+/**
+ * OffHeapLocalStore
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 堆外一级缓存存储.缓存值序列化后顺序追加写入固定大小的直接内存分区(slab),堆内仅保存偏移索引.
+ * 分区总数由字节上限决定,写满后循环回收最早写入的分区:仍有效且写入后被读取过的元素迁移至该分区头部(至多占一半),其余丢弃.
+ * 删除与覆盖只移除索引,空间在分区回收时统一整理,不产生碎片.
+ * 读取时复制字节并反序列化,本身即为复制,建议配合CopyPolicy.IDENTITY使用.需保证-XX:MaxDirectMemorySize不小于字节上限.
+ * 容量与回收顺序为全局,忽略LocalConfig中的maxEntries,maxBytes与evictionPolicy.
+ *
+ * @author YRain
+ */
+public class OffHeapLocalStore implements LocalStore {
+
+    // 默认分区大小
+    public static final int                             DEFAULT_SLAB_BYTES = 4 * 1024 * 1024;
+    // 回收分区时,迁移元素最多占用分区的比例
+    private static final double                         RETAIN_RATIO       = 0.5;
+
+    private final Serializer                            serializer;
+    private final long                                  maxBytes;
+    private final int                                   slabBytes;
+    private final Slab[]                                slabs;
+    private final ConcurrentHashMap<LocalKey, Location> index              = new ConcurrentHashMap<>();
+    // 写入锁,追加写入与分区回收均需持有
+    private final ReentrantLock                         writeLock          = new ReentrantLock();
+    // 当前写入分区,-1为未写入
+    private int                                         current            = -1;
+    // 回收分区时丢弃的有效元素数量
+    private final AtomicLong                            evictions          = new AtomicLong();
+
+    public OffHeapLocalStore(Serializer serializer, long maxBytes) {
+        this(serializer, maxBytes, DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * @param serializer 缓存值序列化
+     * @param maxBytes 直接内存上限
+     * @param slabBytes 分区大小,大于分区的缓存值不保存
+     */
+    public OffHeapLocalStore(Serializer serializer, long maxBytes, int slabBytes) {
+        this.serializer = serializer;
+        this.slabBytes = slabBytes;
+        this.slabs = new Slab[(int) Math.max(1, Math.min(maxBytes / slabBytes, Integer.MAX_VALUE))];
+        this.maxBytes = (long) this.slabs.length * slabBytes;
+    }
+
+    @Override
+    public LocalEntry get(String name, String key) {
+        return this.get(name, key, true);
+    }
+
+    @Override
+    public LocalEntry getQuiet(String name, String key) {
+        return this.get(name, key, false);
+    }
+
+    @Override
+    public Map<String, LocalEntry> getAll(String name, Collection<String> keys) {
+        Map<String, LocalEntry> entries = Maps.newLinkedHashMap();
+        for (String key : keys) {
+            LocalEntry entry = this.get(name, key, true);
+            if (entry != null) {
+                entries.put(key, entry);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void put(String name, LocalEntry entry) {
+        LocalKey id = new LocalKey(name, entry.getKey());
+        Object value = entry.getValue();
+        if (value == null) {
+            this.index.remove(id);
+            return;
+        }
+        boolean raw = value instanceof LocalBytes;
+        byte[] bytes = raw ? ((LocalBytes) value).getBytes() : this.serializer.serialize(value);
+        if (bytes.length > this.slabBytes) {
+            this.index.remove(id);
+            return;
+        }
+        this.writeLock.lock();
+        try {
+            this.index.put(id, this.append(id, bytes, raw, entry.getTtl(), entry.getCreationTime(), entry.getVersion()));
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(String name, Collection<LocalEntry> entries) {
+        for (LocalEntry entry : entries) {
+            this.put(name, entry);
+        }
+    }
+
+    @Override
+    public void remove(String name, String key) {
+        this.index.remove(new LocalKey(name, key));
+    }
+
+    @Override
+    public void removeAll(String name, Collection<String> keys) {
+        for (String key : keys) {
+            this.index.remove(new LocalKey(name, key));
+        }
+    }
+
+    @Override
+    public void clear(String name) {
+        Iterator<LocalKey> iterator = this.index.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().name.equals(name)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        this.index.clear();
+    }
+
+    @Override
+    public Set<String> names() {
+        Set<String> names = Sets.newHashSet();
+        for (LocalKey id : this.index.keySet()) {
+            names.add(id.name);
+        }
+        return names;
+    }
+
+    @Override
+    public Set<String> keys(String name) {
+        Set<String> keys = Sets.newHashSet();
+        for (LocalKey id : this.index.keySet()) {
+            if (id.name.equals(name)) {
+                keys.add(id.key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public void configure(String name, LocalConfig config) {
+        // 直接内存与回收顺序为所有缓存名称共享
+    }
+
+    @Override
+    public void shutdown() {
+        this.writeLock.lock();
+        try {
+            this.index.clear();
+            Arrays.fill(this.slabs, null);
+            this.current = -1;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * 当前元素数量
+     */
+    public long size() {
+        return this.index.size();
+    }
+
+    /**
+     * 已分配的直接内存
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Slab slab : this.slabs) {
+            if (slab != null) {
+                bytes += this.slabBytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private LocalEntry get(String name, String key, boolean access) {
+        LocalKey id = new LocalKey(name, key);
+        Location location = this.index.get(id);
+        if (location == null) {
+            return null;
+        }
+        if (location.isExpired(System.currentTimeMillis())) {
+            this.index.remove(id, location);
+            return null;
+        }
+        byte[] bytes = this.read(location);
+        if (bytes == null) {
+            // 分区已回收
+            return null;
+        }
+        if (access) {
+            location.accessed = true;
+        }
+        Object value = location.raw ? new LocalBytes(bytes) : this.serializer.deserialize(bytes);
+        return new LocalEntry(key, value, location.ttl, location.creationTime, location.version);
+    }
+
+    /**
+     * 读取元素字节,所在分区已回收时返回null
+     */
+    private byte[] read(Location location) {
+        Slab slab = location.slab;
+        slab.lock.readLock().lock();
+        try {
+            if (slab.epoch != location.epoch) {
+                return null;
+            }
+            return slab.read(location.offset, location.length);
+        } finally {
+            slab.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 追加写入当前分区,空间不足时切换至下一分区,需持有writeLock
+     */
+    private Location append(LocalKey id, byte[] bytes, boolean raw, int ttl, long creationTime, long version) {
+        Slab slab = this.current < 0 ? null : this.slabs[this.current];
+        if (slab == null || slab.position + bytes.length > this.slabBytes) {
+            slab = this.nextSlab(bytes.length);
+        }
+        Location location = new Location(id, slab, slab.epoch, slab.position, bytes.length, raw, ttl, creationTime, version);
+        slab.write(slab.position, bytes);
+        slab.position += bytes.length;
+        slab.locations.add(location);
+        return location;
+    }
+
+    /**
+     * 切换至下一分区,未分配时分配,否则回收
+     */
+    private Slab nextSlab(int required) {
+        this.current = (this.current + 1) % this.slabs.length;
+        Slab slab = this.slabs[this.current];
+        if (slab == null) {
+            slab = new Slab(ByteBuffer.allocateDirect(this.slabBytes));
+            this.slabs[this.current] = slab;
+        } else {
+            this.recycle(slab, required);
+        }
+        return slab;
+    }
+
+    /**
+     * 回收分区:有效且被读取过的元素迁移至分区头部,其余移除索引.迁移后需保留required字节供本次写入
+     */
+    private void recycle(Slab slab, int required) {
+        long now = System.currentTimeMillis();
+        long limit = Math.min((long) (this.slabBytes * RETAIN_RATIO), this.slabBytes - required);
+        long retainedBytes = 0;
+        List<Location> retained = Lists.newArrayList();
+        List<byte[]> retainedValues = Lists.newArrayList();
+        for (Location location : slab.locations) {
+            if (this.index.get(location.id) != location) {
+                // 已删除或已覆盖
+                continue;
+            }
+            if (location.accessed && !location.isExpired(now) && retainedBytes + location.length <= limit) {
+                retained.add(location);
+                retainedValues.add(slab.read(location.offset, location.length));
+                retainedBytes += location.length;
+            } else if (this.index.remove(location.id, location)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+        slab.lock.writeLock().lock();
+        try {
+            slab.epoch++;
+            slab.position = 0;
+            slab.locations = Lists.newArrayList();
+        } finally {
+            slab.lock.writeLock().unlock();
+        }
+        for (int i = 0; i < retained.size(); i++) {
+            Location location = retained.get(i);
+            // 迁移后清除访问标记,再次回收前未被读取则丢弃
+            Location moved = this.append(location.id, retainedValues.get(i), location.raw, location.ttl, location.creationTime, location.version);
+            this.index.replace(location.id, location, moved);
+        }
+    }
+
+    /**
+     * 直接内存分区.buffer内容与epoch由lock保护,position与locations仅在持有writeLock时访问
+     */
+    private static class Slab {
+
+        private final ByteBuffer             buffer;
+        private final ReentrantReadWriteLock lock      = new ReentrantReadWriteLock();
+        // 回收次数,元素记录写入时的值,不一致说明所在分区已回收
+        private int                          epoch;
+        private int                          position;
+        private List<Location>               locations = Lists.newArrayList();
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte[] read(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        void write(int offset, byte[] bytes) {
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(offset);
+            view.put(bytes);
+        }
+
+    }
+
+    private static class Location {
+
+        private final LocalKey   id;
+        private final Slab       slab;
+        private final int        epoch;
+        private final int        offset;
+        private final int        length;
+        // 是否为CopyPolicy.COPY保存的字节
+        private final boolean    raw;
+        private final int        ttl;
+        private final long       creationTime;
+        private final long       version;
+        // 写入后是否被读取过
+        private volatile boolean accessed;
+
+        Location(LocalKey id, Slab slab, int epoch, int offset, int length, boolean raw, int ttl, long creationTime, long version) {
+            this.id = id;
+            this.slab = slab;
+            this.epoch = epoch;
+            this.offset = offset;
+            this.length = length;
+            this.raw = raw;
+            this.ttl = ttl;
+            this.creationTime = creationTime;
+            this.version = version;
+        }
+
+        boolean isExpired(long now) {
+            return ttl != 0 && now >= creationTime + ttl * 1000L;
+        }
+
+    }
+
+}
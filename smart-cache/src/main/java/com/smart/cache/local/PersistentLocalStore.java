@@ -0,0 +1,311 @@
+package com.smart.cache.local;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.smart.serializer.Serializer;
+
+/**
+ * PersistentLocalStore
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 可持久化的一级缓存存储,装饰任意LocalStore.关闭时将各缓存名称的元素连同其失效纪元写入快照文件,
+ * 启动时以内存映射读取快照,仅恢复纪元与Redis中当前纪元一致(即停机期间未被写入)的缓存名称.
+ * 快照文件以稳定的节点标识命名,并以文件锁避免同一节点标识的多个进程同时使用.
+ *
+ * @author YRain
+ */
+public class PersistentLocalStore implements LocalStore {
+
+    // 全局纪元在快照纪元中的名称,cls时递增
+    public static final String             GLOBAL  = "*";
+
+    private static final Charset           UTF_8   = Charset.forName("UTF-8");
+    private static final int               MAGIC   = 0x534d4c32;
+
+    private final LocalStore               delegate;
+    private final Serializer               serializer;
+    private final File                     file;
+    private final RandomAccessFile         lockFile;
+    private final FileLock                 lock;
+    // 已载入快照中各缓存名称的元素起始位置
+    private final Map<String, Integer>     sections = Maps.newHashMap();
+    private MappedByteBuffer               snapshot;
+
+    /**
+     * @param delegate 实际存储
+     * @param serializer 缓存值序列化
+     * @param file 快照文件
+     * @throws IOException 快照文件已被其他进程使用
+     */
+    public PersistentLocalStore(LocalStore delegate, Serializer serializer, File file) throws IOException {
+        this.delegate = delegate;
+        this.serializer = serializer;
+        this.file = file;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("mkdirs failed:" + dir);
+        }
+        this.lockFile = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw");
+        FileLock lock = null;
+        try {
+            lock = this.lockFile.getChannel().tryLock();
+        } catch (Exception e) {
+            // 同一JVM内重复加锁
+        }
+        if (lock == null) {
+            this.lockFile.close();
+            throw new IOException("snapshot locked by another process:" + file);
+        }
+        this.lock = lock;
+    }
+
+    //
+    // snapshot
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 以内存映射载入快照,返回快照中各缓存名称的纪元(含GLOBAL).快照不存在或格式不符时返回空
+     */
+    public synchronized Map<String, Long> load() throws IOException {
+        Map<String, Long> epochs = Maps.newHashMap();
+        this.sections.clear();
+        this.snapshot = null;
+        if (!this.file.exists()) {
+            return epochs;
+        }
+        try (FileChannel channel = FileChannel.open(this.file.toPath())) {
+            this.snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (this.snapshot.remaining() < 16 || this.snapshot.getInt() != MAGIC) {
+            this.snapshot = null;
+            return epochs;
+        }
+        epochs.put(GLOBAL, this.snapshot.getLong());
+        int names = this.snapshot.getInt();
+        for (int i = 0; i < names; i++) {
+            String name = this.readString();
+            epochs.put(name, this.snapshot.getLong());
+            int length = this.snapshot.getInt();
+            this.sections.put(name, this.snapshot.position());
+            this.snapshot.position(this.snapshot.position() + length);
+        }
+        return epochs;
+    }
+
+    /**
+     * 将已载入快照中指定名称的未过期元素恢复至实际存储,返回恢复数量
+     */
+    public synchronized int restore(String name) {
+        Integer position = this.sections.get(name);
+        if (this.snapshot == null || position == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int restored = 0;
+        List<LocalEntry> entries = Lists.newArrayList();
+        this.snapshot.position(position);
+        int count = this.snapshot.getInt();
+        for (int i = 0; i < count; i++) {
+            String key = this.readString();
+            int ttl = this.snapshot.getInt();
+            long creationTime = this.snapshot.getLong();
+            long version = this.snapshot.getLong();
+            boolean raw = this.snapshot.get() == 1;
+            byte[] bytes = new byte[this.snapshot.getInt()];
+            this.snapshot.get(bytes);
+            LocalEntry entry = new LocalEntry(key, null, ttl, creationTime);
+            if (entry.isExpired(now)) {
+                continue;
+            }
+            Object value = raw ? new LocalBytes(bytes) : this.serializer.deserialize(bytes);
+            entries.add(new LocalEntry(key, value, ttl, creationTime, version));
+            restored++;
+        }
+        if (!entries.isEmpty()) {
+            this.delegate.putAll(name, entries);
+        }
+        return restored;
+    }
+
+    /**
+     * 释放已载入的快照
+     */
+    public synchronized void unload() {
+        this.sections.clear();
+        this.snapshot = null;
+    }
+
+    /**
+     * 将指定名称的元素写入快照,epochs为写入前读取的各缓存名称纪元(含GLOBAL).先写临时文件再替换,返回写入数量
+     */
+    public synchronized int save(Map<String, Long> epochs) throws IOException {
+        long now = System.currentTimeMillis();
+        int saved = 0;
+        File temp = new File(this.file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            Long global = epochs.get(GLOBAL);
+            out.writeInt(MAGIC);
+            out.writeLong(global == null ? 0 : global);
+            out.writeInt(epochs.containsKey(GLOBAL) ? epochs.size() - 1 : epochs.size());
+            for (Map.Entry<String, Long> epoch : epochs.entrySet()) {
+                if (GLOBAL.equals(epoch.getKey())) {
+                    continue;
+                }
+                List<byte[]> records = Lists.newArrayList();
+                int length = 4;
+                for (String key : this.delegate.keys(epoch.getKey())) {
+                    LocalEntry entry = this.delegate.getQuiet(epoch.getKey(), key);
+                    if (entry == null || entry.getValue() == null || entry.isExpired(now)) {
+                        continue;
+                    }
+                    byte[] record = this.encode(entry);
+                    records.add(record);
+                    length += record.length;
+                }
+                this.writeString(out, epoch.getKey());
+                out.writeLong(epoch.getValue());
+                out.writeInt(length);
+                out.writeInt(records.size());
+                for (byte[] record : records) {
+                    out.write(record);
+                }
+                saved += records.size();
+            }
+        }
+        Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return saved;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public LocalStore getDelegate() {
+        return delegate;
+    }
+
+    //
+    // LocalStore
+    // ---------------------------------------------------------------------------------------------------
+    @Override
+    public LocalEntry get(String name, String key) {
+        return this.delegate.get(name, key);
+    }
+
+    @Override
+    public LocalEntry getQuiet(String name, String key) {
+        return this.delegate.getQuiet(name, key);
+    }
+
+    @Override
+    public Map<String, LocalEntry> getAll(String name, Collection<String> keys) {
+        return this.delegate.getAll(name, keys);
+    }
+
+    @Override
+    public void put(String name, LocalEntry entry) {
+        this.delegate.put(name, entry);
+    }
+
+    @Override
+    public void putAll(String name, Collection<LocalEntry> entries) {
+        this.delegate.putAll(name, entries);
+    }
+
+    @Override
+    public void remove(String name, String key) {
+        this.delegate.remove(name, key);
+    }
+
+    @Override
+    public void removeAll(String name, Collection<String> keys) {
+        this.delegate.removeAll(name, keys);
+    }
+
+    @Override
+    public void clear(String name) {
+        this.delegate.clear(name);
+    }
+
+    @Override
+    public void clearAll() {
+        this.delegate.clearAll();
+    }
+
+    @Override
+    public Set<String> names() {
+        return this.delegate.names();
+    }
+
+    @Override
+    public Set<String> keys(String name) {
+        return this.delegate.keys(name);
+    }
+
+    @Override
+    public void configure(String name, LocalConfig config) {
+        this.delegate.configure(name, config);
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+        this.unload();
+        try {
+            this.lock.release();
+            this.lockFile.close();
+        } catch (IOException e) {
+            // ignore...
+        }
+    }
+
+    //
+    // private
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * key, ttl, creationTime, version, raw, length, value
+     */
+    private byte[] encode(LocalEntry entry) {
+        Object value = entry.getValue();
+        boolean raw = value instanceof LocalBytes;
+        byte[] bytes = raw ? ((LocalBytes) value).getBytes() : this.serializer.serialize(value);
+        byte[] key = entry.getKey().getBytes(UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + key.length + 4 + 8 + 8 + 1 + 4 + bytes.length);
+        record.putInt(key.length).put(key);
+        record.putInt(entry.getTtl());
+        record.putLong(entry.getCreationTime());
+        record.putLong(entry.getVersion());
+        record.put((byte) (raw ? 1 : 0));
+        record.putInt(bytes.length).put(bytes);
+        return record.array();
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[this.snapshot.getInt()];
+        this.snapshot.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,525 @@
+package com.smart.cache.local;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * TinyLfuLocalStore
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 基于W-TinyLFU的一级缓存存储.所有缓存名称共享同一容量上限,元素按引用保存,复制由CacheTemplate按CopyPolicy处理.
+ * 数据存放于ConcurrentHashMap,读取无锁;淘汰顺序按key分段加锁维护,读取时仅尝试加锁调整顺序,竞争时放弃.
+ * 每段分为窗口区(LRU,约1%)与主区(SLRU,保护区约80%),窗口区淘汰的元素与主区最久未访问的元素比较访问频率,高者保留.
+ * LocalConfig配置maxEntries的缓存名称使用独立的W-TinyLFU实例,不占用共享容量;maxBytes与evictionPolicy忽略.
+ *
+ * @author YRain
+ */
+public class TinyLfuLocalStore implements LocalStore {
+
+    // 默认最大元素数量
+    public static final long                                   DEFAULT_MAXIMUM_SIZE = 100000;
+    // 每段最少元素数量,容量较小时减少分段数
+    private static final int                                   MIN_STRIPE_SIZE      = 64;
+    // 窗口区占比
+    private static final double                                WINDOW_RATIO         = 0.01;
+    // 保护区占主区比例
+    private static final double                                PROTECTED_RATIO      = 0.8;
+    // 候选频率不低于此值时以1/128概率直接准入,避免被刻意构造的高频淘汰者长期占位
+    private static final int                                   ADMIT_RANDOM_FREQ    = 6;
+
+    static final int                                           WINDOW               = 0;
+    static final int                                           PROBATION            = 1;
+    static final int                                           PROTECTED            = 2;
+    static final int                                           REMOVED              = 3;
+
+    private final ConcurrentHashMap<LocalKey, Node>            data;
+    private final Stripe[]                                     stripes;
+    private final FrequencySketch                              sketch;
+    private final long                                         maximumSize;
+    // 配置了maxEntries的缓存名称的独立实例
+    private final ConcurrentHashMap<String, TinyLfuLocalStore> dedicated            = new ConcurrentHashMap<>();
+
+    public TinyLfuLocalStore() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public TinyLfuLocalStore(long maximumSize) {
+        this(maximumSize, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param maximumSize 最大元素数量
+     * @param concurrencyLevel 预计并发线程数,决定分段数
+     */
+    public TinyLfuLocalStore(long maximumSize, int concurrencyLevel) {
+        this.maximumSize = Math.max(1, maximumSize);
+        int count = 1;
+        while (count < concurrencyLevel && count * 2L * MIN_STRIPE_SIZE <= this.maximumSize) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(this.maximumSize / count);
+        }
+        this.data = new ConcurrentHashMap<>(16, 0.75f, count);
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    @Override
+    public LocalEntry get(String name, String key) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            return store.get(name, key);
+        }
+        LocalKey id = new LocalKey(name, key);
+        Node node = this.data.get(id);
+        if (node == null) {
+            return null;
+        }
+        LocalEntry entry = node.entry;
+        long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            this.removeExpired(node, now);
+            return null;
+        }
+        this.sketch.increment(id);
+        Stripe stripe = this.stripeOf(id);
+        if (stripe.tryLock()) {
+            try {
+                stripe.onAccess(node);
+            } finally {
+                stripe.unlock();
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public LocalEntry getQuiet(String name, String key) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            return store.getQuiet(name, key);
+        }
+        Node node = this.data.get(new LocalKey(name, key));
+        if (node == null || node.entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return node.entry;
+    }
+
+    @Override
+    public Map<String, LocalEntry> getAll(String name, Collection<String> keys) {
+        Map<String, LocalEntry> entries = Maps.newLinkedHashMap();
+        for (String key : keys) {
+            LocalEntry entry = this.get(name, key);
+            if (entry != null) {
+                entries.put(key, entry);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void put(String name, LocalEntry entry) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            store.put(name, entry);
+            return;
+        }
+        LocalKey id = new LocalKey(name, entry.getKey());
+        this.sketch.increment(id);
+        Stripe stripe = this.stripeOf(id);
+        stripe.lock();
+        try {
+            Node node = this.data.get(id);
+            if (node != null) {
+                node.entry = entry;
+                stripe.onAccess(node);
+            } else {
+                node = new Node(id, entry);
+                this.data.put(id, node);
+                stripe.add(node);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(String name, Collection<LocalEntry> entries) {
+        for (LocalEntry entry : entries) {
+            this.put(name, entry);
+        }
+    }
+
+    @Override
+    public void remove(String name, String key) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            store.remove(name, key);
+            return;
+        }
+        Node node = this.data.get(new LocalKey(name, key));
+        if (node != null) {
+            this.remove(node);
+        }
+    }
+
+    @Override
+    public void removeAll(String name, Collection<String> keys) {
+        for (String key : keys) {
+            this.remove(name, key);
+        }
+    }
+
+    @Override
+    public void clear(String name) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            store.clearAll();
+        }
+        this.clearShared(name);
+    }
+
+    @Override
+    public void clearAll() {
+        for (TinyLfuLocalStore store : this.dedicated.values()) {
+            store.clearAll();
+        }
+        this.clearShared(null);
+    }
+
+    @Override
+    public Set<String> names() {
+        Set<String> names = Sets.newHashSet();
+        for (LocalKey id : this.data.keySet()) {
+            names.add(id.name);
+        }
+        for (TinyLfuLocalStore store : this.dedicated.values()) {
+            names.addAll(store.names());
+        }
+        return names;
+    }
+
+    @Override
+    public Set<String> keys(String name) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            return store.keys(name);
+        }
+        Set<String> keys = Sets.newHashSet();
+        for (LocalKey id : this.data.keySet()) {
+            if (id.name.equals(name)) {
+                keys.add(id.key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * maxEntries变化时丢弃该名称已有元素
+     */
+    @Override
+    public void configure(String name, LocalConfig config) {
+        if (config != null && config.getMaxEntries() > 0) {
+            TinyLfuLocalStore store = this.dedicated.get(name);
+            if (store != null && store.getMaximumSize() == config.getMaxEntries()) {
+                return;
+            }
+            TinyLfuLocalStore replaced = this.dedicated.put(name, new TinyLfuLocalStore(config.getMaxEntries()));
+            if (replaced != null) {
+                replaced.clearAll();
+            } else {
+                this.clearShared(name);
+            }
+        } else {
+            TinyLfuLocalStore removed = this.dedicated.remove(name);
+            if (removed != null) {
+                removed.clearAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.clearAll();
+    }
+
+    /**
+     * 当前元素数量(包含未清理的过期元素)
+     */
+    public long size() {
+        long size = this.data.size();
+        for (TinyLfuLocalStore store : this.dedicated.values()) {
+            size += store.size();
+        }
+        return size;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 删除共享实例中指定name下的元素,name为null时删除全部
+     */
+    private void clearShared(String name) {
+        for (Stripe stripe : this.stripes) {
+            stripe.lock();
+            try {
+                stripe.clear(name);
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private void remove(Node node) {
+        Stripe stripe = this.stripeOf(node.id);
+        stripe.lock();
+        try {
+            if (this.data.remove(node.id, node)) {
+                stripe.unlink(node);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * 删除已过期的元素.持有分段锁后重新检查,期间put已写入新值时保留
+     */
+    private void removeExpired(Node node, long now) {
+        Stripe stripe = this.stripeOf(node.id);
+        stripe.lock();
+        try {
+            if (node.entry.isExpired(now) && this.data.remove(node.id, node)) {
+                stripe.unlink(node);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * 元素所在区域:WINDOW,PROBATION,PROTECTED,不存在时为REMOVED.供测试检查淘汰顺序
+     */
+    int regionOf(String name, String key) {
+        TinyLfuLocalStore store = this.dedicated.get(name);
+        if (store != null) {
+            return store.regionOf(name, key);
+        }
+        LocalKey id = new LocalKey(name, key);
+        Stripe stripe = this.stripeOf(id);
+        stripe.lock();
+        try {
+            Node node = this.data.get(id);
+            return node == null ? REMOVED : node.queue;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private Stripe stripeOf(LocalKey id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return this.stripes[hash & (this.stripes.length - 1)];
+    }
+
+    /**
+     * 窗口区淘汰的候选者是否替换主区的淘汰者
+     */
+    private boolean admit(LocalKey candidate, LocalKey victim) {
+        int candidateFreq = this.sketch.frequency(candidate);
+        int victimFreq = this.sketch.frequency(victim);
+        if (candidateFreq > victimFreq) {
+            return true;
+        }
+        return candidateFreq >= ADMIT_RANDOM_FREQ && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    //
+    // Stripe
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 分段淘汰顺序,所有方法需持有本段锁调用
+     */
+    @SuppressWarnings("serial")
+    private class Stripe extends ReentrantLock {
+
+        private final AccessQueue window    = new AccessQueue();
+        private final AccessQueue probation = new AccessQueue();
+        private final AccessQueue protect   = new AccessQueue();
+        private final long        windowMaximum;
+        private final long        mainMaximum;
+        private final long        protectedMaximum;
+
+        Stripe(long maximum) {
+            maximum = Math.max(1, maximum);
+            this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_RATIO));
+            this.mainMaximum = Math.max(0, maximum - this.windowMaximum);
+            this.protectedMaximum = (long) (this.mainMaximum * PROTECTED_RATIO);
+        }
+
+        void add(Node node) {
+            node.queue = WINDOW;
+            this.window.addLast(node);
+            this.evict();
+        }
+
+        void onAccess(Node node) {
+            switch (node.queue) {
+            case WINDOW:
+                this.window.moveToBack(node);
+                break;
+            case PROBATION:
+                this.probation.remove(node);
+                node.queue = PROTECTED;
+                this.protect.addLast(node);
+                while (this.protect.size > this.protectedMaximum) {
+                    Node demoted = this.protect.head;
+                    this.protect.remove(demoted);
+                    demoted.queue = PROBATION;
+                    this.probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                this.protect.moveToBack(node);
+                break;
+            default:
+                break;
+            }
+        }
+
+        void unlink(Node node) {
+            switch (node.queue) {
+            case WINDOW:
+                this.window.remove(node);
+                break;
+            case PROBATION:
+                this.probation.remove(node);
+                break;
+            case PROTECTED:
+                this.protect.remove(node);
+                break;
+            default:
+                break;
+            }
+            node.queue = REMOVED;
+        }
+
+        /**
+         * 窗口区超出上限时,最久未访问的元素进入主区;主区已满时与主区淘汰者比较频率,低者移除
+         */
+        void evict() {
+            long now = System.currentTimeMillis();
+            while (this.window.size > this.windowMaximum) {
+                Node candidate = this.window.head;
+                this.window.remove(candidate);
+                if (this.probation.size + this.protect.size < this.mainMaximum) {
+                    candidate.queue = PROBATION;
+                    this.probation.addLast(candidate);
+                    continue;
+                }
+                Node victim = this.probation.head != null ? this.probation.head : this.protect.head;
+                if (victim != null && !candidate.entry.isExpired(now) && (victim.entry.isExpired(now) || admit(candidate.id, victim.id))) {
+                    this.unlink(victim);
+                    data.remove(victim.id, victim);
+                    candidate.queue = PROBATION;
+                    this.probation.addLast(candidate);
+                } else {
+                    candidate.queue = REMOVED;
+                    data.remove(candidate.id, candidate);
+                }
+            }
+        }
+
+        /**
+         * 删除指定name下的元素,name为null时删除全部
+         */
+        void clear(String name) {
+            for (AccessQueue queue : new AccessQueue[] { this.window, this.probation, this.protect }) {
+                Node node = queue.head;
+                while (node != null) {
+                    Node next = node.next;
+                    if (name == null || name.equals(node.id.name)) {
+                        queue.remove(node);
+                        node.queue = REMOVED;
+                        data.remove(node.id, node);
+                    }
+                    node = next;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * 双向链表,头部为最久未访问
+     */
+    private static class AccessQueue {
+
+        private Node head;
+        private Node tail;
+        private long size;
+
+        void addLast(Node node) {
+            node.prev = this.tail;
+            node.next = null;
+            if (this.tail == null) {
+                this.head = node;
+            } else {
+                this.tail.next = node;
+            }
+            this.tail = node;
+            this.size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                this.head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                this.tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            this.size--;
+        }
+
+        void moveToBack(Node node) {
+            if (this.tail != node) {
+                this.remove(node);
+                this.addLast(node);
+            }
+        }
+
+    }
+
+    private static class Node {
+
+        private final LocalKey      id;
+        private volatile LocalEntry entry;
+        // 以下字段仅在持有分段锁时访问
+        private Node                prev;
+        private Node                next;
+        private int                 queue;
+
+        Node(LocalKey id, LocalEntry entry) {
+            this.id = id;
+            this.entry = entry;
+        }
+
+    }
+
+}
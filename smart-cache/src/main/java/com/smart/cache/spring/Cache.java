@@ -5,6 +5,9 @@ import java.util.concurrent.Callable;
 import org.springframework.cache.support.SimpleValueWrapper;
 
 import com.smart.cache.CacheTemplate;
+import com.smart.cache.Tombstone;
+
+import net.sf.ehcache.CacheException;
 
 /**
  * Cache
@@ -22,9 +25,16 @@ public class Cache implements org.springframework.cache.Cache {
         this.cacheTemplate = cacheTemplate;
     }
 
+    /**
+     * 空值标记返回值为null的ValueWrapper,表示已缓存的null
+     */
     @Override
     public ValueWrapper get(Object key) {
-        return toValueWrapper(this.cacheTemplate.get(this.name, String.valueOf(key)));
+        Object value = this.cacheTemplate.lookup(this.name, String.valueOf(key));
+        if (value instanceof Tombstone) {
+            return new SimpleValueWrapper(null);
+        }
+        return toValueWrapper(value);
     }
 
     @Override
@@ -32,13 +42,18 @@ public class Cache implements org.springframework.cache.Cache {
         return this.cacheTemplate.get(this.name, String.valueOf(key));
     }
 
+    /**
+     * 同一JVM内相同key的并发加载仅执行一次,支持@Cacheable(sync = true)
+     */
     @Override
     public <T> T get(Object key, Callable<T> valueLoader) {
-        T value = this.cacheTemplate.get(this.name, String.valueOf(key));
-        if (value == null) {
-            return loadValue(key, valueLoader);
+        try {
+            return this.cacheTemplate.get(this.name, String.valueOf(key), valueLoader);
+        } catch (CacheException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause() != null ? ex.getCause() : ex);
+        } catch (RuntimeException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
         }
-        return value;
     }
 
     @Override
@@ -53,7 +68,11 @@ public class Cache implements org.springframework.cache.Cache {
 
     @Override
     public void put(Object key, Object value) {
-        this.cacheTemplate.set(this.name, String.valueOf(key), value);
+        if (value == null && this.cacheTemplate.isTombstoneEnabled()) {
+            this.cacheTemplate.setTombstone(this.name, String.valueOf(key));
+        } else {
+            this.cacheTemplate.set(this.name, String.valueOf(key), value);
+        }
     }
 
     @Override
@@ -74,15 +93,4 @@ public class Cache implements org.springframework.cache.Cache {
     private ValueWrapper toValueWrapper(Object value) {
         return (value != null ? new SimpleValueWrapper(value) : null);
     }
-
-    private <T> T loadValue(Object key, Callable<T> valueLoader) {
-        T value;
-        try {
-            value = valueLoader.call();
-        } catch (Throwable ex) {
-            throw new ValueRetrievalException(key, valueLoader, ex);
-        }
-        put(key, value);
-        return value;
-    }
 }
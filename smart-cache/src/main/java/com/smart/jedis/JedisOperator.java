@@ -10,6 +10,8 @@ import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.SortingParams;
 
 /**
@@ -115,6 +117,24 @@ public class JedisOperator {
         });
     }
 
+    public Object evalsha(final byte[] sha1, final List<byte[]> keys, final List<byte[]> args) {
+        return execute(new JedisExecutor<Object>() {
+            @Override
+            public Object doInJedis(Jedis jedis) {
+                return jedis.evalsha(sha1, keys, args);
+            }
+        });
+    }
+
+    public byte[] scriptLoad(final byte[] script) {
+        return execute(new JedisExecutor<byte[]>() {
+            @Override
+            public byte[] doInJedis(Jedis jedis) {
+                return jedis.scriptLoad(script);
+            }
+        });
+    }
+
     //
     // string
     // ---------------------------------------------------------------------------------------------------
@@ -862,6 +882,15 @@ public class JedisOperator {
         });
     }
 
+    public String set(final byte[] key, final byte[] value, final byte[] nxxx, final byte[] expx, final long time) {
+        return execute(new JedisExecutor<String>() {
+            @Override
+            String doInJedis(Jedis jedis) {
+                return jedis.set(key, value, nxxx, expx, time);
+            }
+        });
+    }
+
     public byte[] get(final byte[] key) {
         return execute(new JedisExecutor<byte[]>() {
             @Override
@@ -1132,6 +1161,15 @@ public class JedisOperator {
         });
     }
 
+    public ScanResult<Map.Entry<byte[], byte[]>> hscan(final byte[] key, final byte[] cursor, final ScanParams params) {
+        return execute(new JedisExecutor<ScanResult<Map.Entry<byte[], byte[]>>>() {
+            @Override
+            ScanResult<Map.Entry<byte[], byte[]>> doInJedis(Jedis jedis) {
+                return jedis.hscan(key, cursor, params);
+            }
+        });
+    }
+
     public Long hlen(final byte[] key) {
         return execute(new JedisExecutor<Long>() {
             @Override
@@ -1366,6 +1404,15 @@ public class JedisOperator {
         });
     }
 
+    public Long zmadd(final byte[] key, final Map<byte[], Double> scoreMembers) {
+        return execute(new JedisExecutor<Long>() {
+            @Override
+            Long doInJedis(Jedis jedis) {
+                return jedis.zadd(key, scoreMembers);
+            }
+        });
+    }
+
     public Set<byte[]> zrange(final byte[] key, final int start, final int end) {
         return execute(new JedisExecutor<Set<byte[]>>() {
             @Override
@@ -1384,6 +1431,24 @@ public class JedisOperator {
         });
     }
 
+    public Long zmrem(final byte[] key, final byte[]... members) {
+        return execute(new JedisExecutor<Long>() {
+            @Override
+            Long doInJedis(Jedis jedis) {
+                return jedis.zrem(key, members);
+            }
+        });
+    }
+
+    public ScanResult<redis.clients.jedis.Tuple> zscan(final byte[] key, final byte[] cursor, final ScanParams params) {
+        return execute(new JedisExecutor<ScanResult<redis.clients.jedis.Tuple>>() {
+            @Override
+            ScanResult<redis.clients.jedis.Tuple> doInJedis(Jedis jedis) {
+                return jedis.zscan(key, cursor, params);
+            }
+        });
+    }
+
     public Double zincrby(final byte[] key, final double score, final byte[] member) {
         return execute(new JedisExecutor<Double>() {
             @Override
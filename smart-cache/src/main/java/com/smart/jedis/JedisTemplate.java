@@ -1,26 +1,42 @@
 package com.smart.jedis;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.InitializingBean;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.smart.serializer.FSTSerializer;
 import com.smart.serializer.Serializer;
 import com.smart.serializer.StringSerializer;
 
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
 import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
 
 /**
  * JedisTemplate
@@ -30,13 +46,19 @@ import redis.clients.jedis.SortingParams;
  */
 public class JedisTemplate implements InitializingBean {
 
-    private JedisPool     jedisPool;
-    private JedisOperator jedisOperator;
-    private JedisCluster  jedisCluster;
-    private boolean       cluster          = false;
-    private Serializer    keySerializer;
-    private Serializer    valSerializer;
-    private Serializer    stringSerializer = new StringSerializer();
+    private JedisPool                               jedisPool;
+    private JedisOperator                           jedisOperator;
+    private JedisCluster                            jedisCluster;
+    // 独立连接(newJedis)的认证密码,与连接池配置一致,为空时不认证
+    private String                                  password;
+    private boolean                                 cluster          = false;
+    private Serializer                              keySerializer;
+    private Serializer                              valSerializer;
+    private Serializer                              stringSerializer = new StringSerializer();
+    private static final byte[]                     NX               = SafeEncoder.encode("NX");
+    private static final byte[]                     PX               = SafeEncoder.encode("PX");
+    // Lua脚本SHA1缓存
+    private final ConcurrentHashMap<String, byte[]> scriptShas       = new ConcurrentHashMap<>();
 
     public JedisTemplate() {
     }
@@ -173,6 +195,109 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 设值-bytes
+     */
+    public boolean bytes(Object key, byte[] value) {
+        if (null == key || null == value) {
+            return false;
+        }
+        if (cluster) {
+            return jedisCluster.set(serializeKey(key), value).equals("OK");
+        } else {
+            return jedisOperator.set(serializeKey(key), value).equals("OK");
+        }
+    }
+
+    /**
+     * 设值-bytes-有效时间
+     */
+    public boolean bytes(Object key, byte[] value, int seconds) {
+        if (null == key || null == value) {
+            return false;
+        }
+        if (cluster) {
+            return jedisCluster.setex(serializeKey(key), seconds, value).equals("OK");
+        } else {
+            return jedisOperator.setex(serializeKey(key), seconds, value).equals("OK");
+        }
+    }
+
+    /**
+     * 取值-bytes
+     */
+    public byte[] bytes(Object key) {
+        if (null == key) {
+            return null;
+        }
+        if (cluster) {
+            return jedisCluster.get(serializeKey(key));
+        } else {
+            return jedisOperator.get(serializeKey(key));
+        }
+    }
+
+    /**
+     * 根据keys获取多个-bytes
+     */
+    public List<byte[]> mbytes(List<?> keys) {
+        if (null == keys || keys.isEmpty()) {
+            return Lists.newArrayList();
+        }
+        byte[][] bkeys = convertObjectArrayToByteArray_serializeKey(keys.toArray());
+        if (cluster) {
+            // 集群模式下MGET须位于同一slot,按slot分组后依次获取,再按原顺序合并
+            byte[][] values = new byte[bkeys.length][];
+            for (List<Integer> indexes : groupBySlot(bkeys).values()) {
+                byte[][] slotkeys = new byte[indexes.size()][];
+                for (int i = 0; i < slotkeys.length; i++) {
+                    slotkeys[i] = bkeys[indexes.get(i)];
+                }
+                List<byte[]> slotvalues = jedisCluster.mget(slotkeys);
+                for (int i = 0; i < slotkeys.length; i++) {
+                    values[indexes.get(i)] = slotvalues.get(i);
+                }
+            }
+            return Lists.newArrayList(values);
+        } else {
+            return jedisOperator.mget(bkeys);
+        }
+    }
+
+    /**
+     * 设值多个-bytes-有效时间(0为永久).单机模式以pipeline一次往返写入
+     */
+    public void mbytes(final Map<?, byte[]> keyvalues, final int seconds) {
+        if (null == keyvalues || keyvalues.isEmpty()) {
+            return;
+        }
+        if (cluster) {
+            for (Map.Entry<?, byte[]> entry : keyvalues.entrySet()) {
+                if (seconds > 0) {
+                    jedisCluster.setex(serializeKey(entry.getKey()), seconds, entry.getValue());
+                } else {
+                    jedisCluster.set(serializeKey(entry.getKey()), entry.getValue());
+                }
+            }
+        } else {
+            jedisOperator.execute(new JedisExecutor<Void>() {
+                @Override
+                Void doInJedis(Jedis jedis) {
+                    Pipeline pipeline = jedis.pipelined();
+                    for (Map.Entry<?, byte[]> entry : keyvalues.entrySet()) {
+                        if (seconds > 0) {
+                            pipeline.setex(serializeKey(entry.getKey()), seconds, entry.getValue());
+                        } else {
+                            pipeline.set(serializeKey(entry.getKey()), entry.getValue());
+                        }
+                    }
+                    pipeline.sync();
+                    return null;
+                }
+            });
+        }
+    }
+
     /**
      * 判断Key是否存在
      */
@@ -274,6 +399,51 @@ public class JedisTemplate implements InitializingBean {
         return ttl;
     }
 
+    /**
+     * 批量返回给定 keys 的剩余生存时间,单机模式以pipeline一次往返获取
+     * 永久:0
+     * 不存在:-1
+     */
+    public List<Long> mttl(final List<?> keys) {
+        List<Long> ttls = Lists.newArrayList();
+        if (null == keys || keys.isEmpty()) {
+            return ttls;
+        }
+        List<Long> results = Lists.newArrayList();
+        if (cluster) {
+            for (Object key : keys) {
+                results.add(jedisCluster.ttl(serializeKey(key)));
+            }
+        } else {
+            results = jedisOperator.execute(new JedisExecutor<List<Long>>() {
+                @Override
+                List<Long> doInJedis(Jedis jedis) {
+                    Pipeline pipeline = jedis.pipelined();
+                    List<Response<Long>> responses = Lists.newArrayList();
+                    for (Object key : keys) {
+                        responses.add(pipeline.ttl(serializeKey(key)));
+                    }
+                    pipeline.sync();
+                    List<Long> ttls = Lists.newArrayList();
+                    for (Response<Long> response : responses) {
+                        ttls.add(response.get());
+                    }
+                    return ttls;
+                }
+            });
+        }
+        for (Long ttl : results) {
+            if (ttl == -2) {
+                ttls.add(-1l);
+            } else if (ttl == -1) {
+                ttls.add(0l);
+            } else {
+                ttls.add(ttl);
+            }
+        }
+        return ttls;
+    }
+
     /**
      * 将给定 key 的值设为 value ，并返回 key 的旧值(old value)。
      * 当 key 存在但不是字符串类型时，返回一个错误。
@@ -320,6 +490,22 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 不存在时设值-有效时间(毫秒),即SET key value NX PX millis
+     */
+    public boolean setnx(Object key, Object value, long millis) {
+        if (null == key || null == value) {
+            return false;
+        }
+        String result;
+        if (cluster) {
+            result = jedisCluster.set(serializeKey(key), serializeVal(value), NX, PX, millis);
+        } else {
+            result = jedisOperator.set(serializeKey(key), serializeVal(value), NX, PX, millis);
+        }
+        return "OK".equals(result);
+    }
+
     /**
      * 清空所有
      */
@@ -404,7 +590,17 @@ public class JedisTemplate implements InitializingBean {
             return false;
         }
         if (cluster) {
-            return jedisCluster.del(convertObjectArrayToByteArray_serializeKey(keys)) != 0;
+            // 集群模式下DEL多个key须位于同一slot,按slot分组删除
+            byte[][] bkeys = convertObjectArrayToByteArray_serializeKey(keys);
+            long count = 0;
+            for (List<Integer> indexes : groupBySlot(bkeys).values()) {
+                byte[][] slotkeys = new byte[indexes.size()][];
+                for (int i = 0; i < slotkeys.length; i++) {
+                    slotkeys[i] = bkeys[indexes.get(i)];
+                }
+                count += jedisCluster.del(slotkeys);
+            }
+            return count != 0;
         } else {
             return jedisOperator.mdel(convertObjectArrayToByteArray_serializeKey(keys)) != 0;
         }
@@ -565,6 +761,20 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * hash.取值-bytes
+     */
+    public byte[] hbytes(Object key, Object field) {
+        if (null == key || null == field) {
+            return null;
+        }
+        if (cluster) {
+            return jedisCluster.hget(serializeKey(key), serializeKey(field));
+        } else {
+            return jedisOperator.hget(serializeKey(key), serializeKey(field));
+        }
+    }
+
     /**
      * hash.取值.多个
      */
@@ -776,6 +986,29 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 增量迭代哈希表 key 中的域和值,每次返回一页及下一页游标,游标为"0"时迭代结束。
+     * count 仅为建议数量,迭代期间被修改的域可能重复返回或不返回。
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> ScanResult<Map.Entry<K, V>> hscan(Object key, String cursor, int count) {
+        if (null == key) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(count);
+        ScanResult<Map.Entry<byte[], byte[]>> result = null;
+        if (cluster) {
+            result = jedisCluster.hscan(serializeKey(key), SafeEncoder.encode(cursor), params);
+        } else {
+            result = jedisOperator.hscan(serializeKey(key), SafeEncoder.encode(cursor), params);
+        }
+        List<Map.Entry<K, V>> entries = Lists.newArrayList();
+        for (Map.Entry<byte[], byte[]> entry : result.getResult()) {
+            entries.add(Maps.immutableEntry((K) deserializeKey(entry.getKey()), (V) deserializeVal(entry.getValue())));
+        }
+        return new ScanResult<Map.Entry<K, V>>(result.getCursorAsBytes(), entries);
+    }
+
     /**
      * 为哈希表 key 中的 field 的值加上增量 increment 。
      * 增量也可以为负数，相当于对给定域进行减法操作。
@@ -1200,6 +1433,26 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 将多个 member 元素及其 score 值加入到有序集 key 当中。
+     * 返回值:
+     * 被成功添加的新成员的数量，不包括那些被更新的、已经存在的成员。
+     */
+    public Long zmadd(Object key, Map<?, Double> scoreMembers) {
+        if (null == key || null == scoreMembers || scoreMembers.isEmpty()) {
+            return null;
+        }
+        Map<byte[], Double> map = Maps.newHashMap();
+        for (Map.Entry<?, Double> entry : scoreMembers.entrySet()) {
+            map.put(serializeVal(entry.getKey()), entry.getValue());
+        }
+        if (cluster) {
+            return jedisCluster.zadd(serializeKey(key), map);
+        } else {
+            return jedisOperator.zmadd(serializeKey(key), map);
+        }
+    }
+
     /**
      * 移除有序集 key 中的一个或多个成员，不存在的成员将被忽略。
      * 当 key 存在但不是有序集类型时，返回一个错误。
@@ -1217,6 +1470,45 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 移除有序集 key 中的多个成员，不存在的成员将被忽略。
+     */
+    public Long zmrem(Object key, List<?> objs) {
+        if (null == key || null == objs || objs.isEmpty()) {
+            return null;
+        }
+        byte[][] members = new byte[objs.size()][];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = serializeVal(objs.get(i));
+        }
+        if (cluster) {
+            return jedisCluster.zrem(serializeKey(key), members);
+        } else {
+            return jedisOperator.zmrem(serializeKey(key), members);
+        }
+    }
+
+    /**
+     * 增量迭代有序集 key 中的成员及其 score 值,每次返回一页及下一页游标,游标为"0"时迭代结束。
+     */
+    public ScanResult<Tuple> zscan(Object key, String cursor, int count) {
+        if (null == key) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(count);
+        ScanResult<redis.clients.jedis.Tuple> result = null;
+        if (cluster) {
+            result = jedisCluster.zscan(serializeKey(key), SafeEncoder.encode(cursor), params);
+        } else {
+            result = jedisOperator.zscan(serializeKey(key), SafeEncoder.encode(cursor), params);
+        }
+        List<Tuple> tuples = Lists.newArrayList();
+        for (redis.clients.jedis.Tuple tuple : result.getResult()) {
+            tuples.add(new Tuple(deserializeVal(tuple.getBinaryElement()), tuple.getScore()));
+        }
+        return new ScanResult<Tuple>(result.getCursorAsBytes(), tuples);
+    }
+
     /**
      * 移除有序集 key 中，指定排名(rank)区间内的所有成员。
      * 区间分别以下标参数 start 和 stop 指出，包含 start 和 stop 在内。
@@ -1554,6 +1846,94 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 创建不属于连接池的独立连接,供长期阻塞的订阅使用,不占用连接池且可单独断开.
+     * 地址,超时与库号取自连接池中的连接,集群模式下依次尝试各节点(发布的消息广播至所有节点).使用后由调用方关闭
+     */
+    public Jedis newJedis() {
+        if (cluster) {
+            RuntimeException failure = null;
+            for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+                try {
+                    return newJedis(pool.getResource());
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            throw null == failure ? new IllegalStateException("No cluster node available") : failure;
+        } else {
+            return newJedis(jedisOperator.getJedis());
+        }
+    }
+
+    /**
+     * 创建连接至指定节点的独立连接,用于集群模式下按MOVED重定向连接Key所在节点.使用后由调用方关闭
+     */
+    public Jedis newJedis(HostAndPort node) {
+        if (cluster) {
+            JedisPool pool = jedisCluster.getClusterNodes().get(node.toString());
+            if (null == pool) {
+                throw new IllegalStateException("Unknown cluster node " + node);
+            }
+            return newJedis(pool.getResource());
+        } else {
+            return newJedis();
+        }
+    }
+
+    /**
+     * 在独立连接上发送Jedis未支持的命令(如XREAD),返回原始响应:状态与字符串为byte[],整数为Long,数组为List.
+     * 错误响应抛出JedisDataException(集群重定向为JedisMovedDataException)
+     */
+    public static Object sendCommand(Jedis jedis, byte[]... args) {
+        Client client = jedis.getClient();
+        client.connect();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeLength(out, '*', args.length);
+        for (byte[] arg : args) {
+            writeLength(out, '$', arg.length);
+            out.write(arg, 0, arg.length);
+            out.write('\r');
+            out.write('\n');
+        }
+        try {
+            OutputStream socket = client.getSocket().getOutputStream();
+            out.writeTo(socket);
+            socket.flush();
+        } catch (IOException e) {
+            client.disconnect();
+            throw new JedisConnectionException(e);
+        }
+        return client.getOne();
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, char type, int length) {
+        byte[] bytes = SafeEncoder.encode(type + String.valueOf(length) + "\r\n");
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private Jedis newJedis(Jedis pooled) {
+        Jedis jedis = null;
+        try {
+            Client client = pooled.getClient();
+            jedis = new Jedis(client.getHost(), client.getPort(), client.getConnectionTimeout(), client.getSoTimeout());
+            if (null != password && !password.isEmpty()) {
+                jedis.auth(password);
+            }
+            if (client.getDB() != 0) {
+                jedis.select(client.getDB().intValue());
+            }
+            return jedis;
+        } catch (RuntimeException e) {
+            if (null != jedis) {
+                jedis.close();
+            }
+            throw e;
+        } finally {
+            pooled.close();
+        }
+    }
+
     public Long publish(final String channel, final String message) {
         if (cluster) {
             return jedisCluster.publish(channel, message);
@@ -1578,6 +1958,64 @@ public class JedisTemplate implements InitializingBean {
         }
     }
 
+    /**
+     * 发布多条消息,非集群模式下以管道单次往返发送
+     */
+    public void mpublish(final String channel, final List<byte[]> messages) {
+        if (null == messages || messages.isEmpty()) {
+            return;
+        }
+        if (cluster) {
+            for (byte[] message : messages) {
+                jedisCluster.publish(serializeKey(channel), message);
+            }
+        } else {
+            jedisOperator.execute(new JedisExecutor<Void>() {
+                @Override
+                Void doInJedis(Jedis jedis) {
+                    Pipeline pipeline = jedis.pipelined();
+                    for (byte[] message : messages) {
+                        pipeline.publish(serializeKey(channel), message);
+                    }
+                    pipeline.sync();
+                    return null;
+                }
+            });
+        }
+    }
+
+    //
+    // script
+    // ---------------------------------------------------------------------------------------------------
+    /**
+     * 以EVALSHA执行Lua脚本,脚本SHA1在本地计算后缓存.
+     * 若Redis中尚无该脚本(首次执行,重启或主从切换后),返回NOSCRIPT,此时改用EVAL执行,Redis会同时缓存该脚本.
+     * 集群模式下keys须位于同一slot.
+     */
+    public Object evalsha(final String script, final List<byte[]> keys, final List<byte[]> args) {
+        if (null == script) {
+            return null;
+        }
+        byte[] sha1 = scriptShas.get(script);
+        if (null == sha1) {
+            sha1 = stringSerializer.serialize(Hashing.sha1().hashString(script, Serializer.CHARSET).toString());
+            scriptShas.putIfAbsent(script, sha1);
+        }
+        try {
+            if (cluster) {
+                return jedisCluster.evalsha(sha1, keys, args);
+            } else {
+                return jedisOperator.evalsha(sha1, keys, args);
+            }
+        } catch (JedisNoScriptException e) {
+            if (cluster) {
+                return jedisCluster.eval(stringSerializer.serialize(script), keys, args);
+            } else {
+                return jedisOperator.eval(stringSerializer.serialize(script), keys, args);
+            }
+        }
+    }
+
     //
     // all
     // ---------------------------------------------------------------------------------------------------
@@ -1623,6 +2061,23 @@ public class JedisTemplate implements InitializingBean {
         return tupls;
     }
 
+    /**
+     * 按集群slot分组,返回 slot -> keys下标
+     */
+    private static Map<Integer, List<Integer>> groupBySlot(byte[][] keys) {
+        Map<Integer, List<Integer>> slots = Maps.newHashMap();
+        for (int i = 0; i < keys.length; i++) {
+            Integer slot = JedisClusterCRC16.getSlot(keys[i]);
+            List<Integer> indexes = slots.get(slot);
+            if (null == indexes) {
+                indexes = Lists.newArrayList();
+                slots.put(slot, indexes);
+            }
+            indexes.add(i);
+        }
+        return slots;
+    }
+
     public static byte[][] convertByteListToByteArray(List<byte[]> args) {
         return args.toArray(new byte[args.size()][0]);
     }
@@ -1681,6 +2136,10 @@ public class JedisTemplate implements InitializingBean {
     // getter & setter
     // ---------------------------------------------------------------------------------------------------
 
+    public boolean isCluster() {
+        return cluster;
+    }
+
     public JedisCluster getJedisCluster() {
         return jedisCluster;
     }
@@ -1697,6 +2156,14 @@ public class JedisTemplate implements InitializingBean {
         this.jedisPool = jedisPool;
     }
 
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
     public JedisOperator getJedisOperator() {
         return jedisOperator;
     }
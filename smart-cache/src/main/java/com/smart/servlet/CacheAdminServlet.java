@@ -37,6 +37,11 @@ public class CacheAdminServlet extends HttpServlet {
     public final static int    RESULT_CODE_SUCCESS = 1;
     public final static int    RESULT_CODE_FALIURE = -1;
 
+    // keys分页默认数量
+    public final static int    KEYS_PAGE_COUNT     = 500;
+    // keys分页最大数量
+    public final static int    KEYS_PAGE_COUNT_MAX = 5000;
+
     protected String           username            = null;
     protected String           password            = null;
 
@@ -152,7 +157,14 @@ public class CacheAdminServlet extends HttpServlet {
         //
         else if (url.equals("/keys")) {
             if (null != name && name.length() > 0) {
-                return returnJSONResultSuccess(RESULT_CODE_SUCCESS, cacheTemplate.getKeysData(name));
+                String cursor = parameters.get("cursor");
+                String count = parameters.get("count");
+                Integer pageCount = Strings.stringToInteger(count);
+                if (pageCount == null || pageCount <= 0) {
+                    pageCount = KEYS_PAGE_COUNT;
+                }
+                pageCount = Math.min(pageCount, KEYS_PAGE_COUNT_MAX);
+                return returnJSONResultSuccess(RESULT_CODE_SUCCESS, cacheTemplate.getKeysData(name, cursor, pageCount));
             }
         }
         //
@@ -162,6 +174,14 @@ public class CacheAdminServlet extends HttpServlet {
             }
         }
         //
+        else if (url.equals("/stats")) {
+            return returnJSONResultSuccess(RESULT_CODE_SUCCESS, cacheTemplate.getStats());
+        }
+        //
+        else if (url.equals("/purges")) {
+            return returnJSONResultSuccess(RESULT_CODE_SUCCESS, cacheTemplate.getPurges());
+        }
+        //
         else if (url.equals("/cls")) {
             cacheTemplate.cls();
             return returnJSONResultSuccess(RESULT_CODE_SUCCESS, null);
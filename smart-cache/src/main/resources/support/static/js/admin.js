@@ -11,6 +11,7 @@ new Vue({
             hostsLoading: false,
             names: [],
             keys: [],
+            cursor: '0',
             hosts: [],
             name: '',
             key: '',
@@ -142,10 +143,24 @@ new Vue({
             vm.resetKeys();
             if (!vm.name) {
                 vm.keys = [];
+                vm.cursor = '0';
                 return;
             }
-            vm.$keys(vm.name).then(data => {
-                vm.keys = data;
+            vm.$keys(vm.name, '0').then(page => {
+                vm.keys = page.items;
+                vm.cursor = page.cursor;
+            });
+        },
+        moreKeys() {
+            const vm = this;
+            if (!vm.name || vm.cursor === '0') {
+                return;
+            }
+            vm.$keys(vm.name, vm.cursor).then(page => {
+                const keys = vm.keys.concat(page.items);
+                keys.sort((a, b) => (a.key || '').localeCompare(b.key || ''));
+                vm.keys = keys;
+                vm.cursor = page.cursor;
             });
         },
         reloadHosts() {
@@ -215,24 +230,25 @@ new Vue({
                 });
             });
         },
-        $keys(name) {
+        $keys(name, cursor) {
             let vm = this;
             return new Promise((resolve) => {
                 vm.keysLoading = true;
-                vm._get(`keys.json?name=${name}`).then(result => {
+                vm._get(`keys.json?name=${name}&cursor=${cursor}`).then(result => {
                     vm.keysLoading = false;
                     if (result.code === -1) {
                         vm.$message.info(result.msg || 'Fail');
-                        resolve([]);
+                        resolve({items: [], cursor: '0'});
                         return;
                     }
-                    let data = (result.data || []).filter(item => !!item);
+                    let page = result.data || {};
+                    let data = (page.items || []).filter(item => !!item);
                     data.sort((a, b) => (a.key || '').localeCompare(b.key || ''));
-                    resolve(data);
+                    resolve({items: data, cursor: page.cursor || '0'});
                 }).catch(() => {
                     vm.keysLoading = false;
                     vm.$message.error('Error!');
-                    resolve([]);
+                    resolve({items: [], cursor: '0'});
                 });
             });
         },
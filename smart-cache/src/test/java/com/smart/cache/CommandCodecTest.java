@@ -0,0 +1,152 @@
+package com.smart.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * CommandCodecTest
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ *
+ * @author YRain
+ */
+public class CommandCodecTest {
+
+    @Test
+    public void roundTripsKeyCommands() {
+        Command set = command(Command.OPT_SET, "user", "k1");
+        Command decoded = (Command) CommandCodec.decode(CommandCodec.encode(set));
+        assertCommand(set, decoded);
+        assertEquals(0, decoded.version);
+
+        Command del = command(Command.OPT_DEL, "user", "中文");
+        assertCommand(del, (Command) CommandCodec.decode(CommandCodec.encode(del)));
+
+        Command nulls = command(Command.OPT_CLS, null, null);
+        assertCommand(nulls, (Command) CommandCodec.decode(CommandCodec.encode(nulls)));
+    }
+
+    @Test
+    public void roundTripsVersionTrailer() {
+        Command set = command(Command.OPT_SET, "user", "k1");
+        set.version = 0x0102030405060708L;
+        byte[] bytes = CommandCodec.encode(set);
+        assertEquals(CommandCodec.encode(command(Command.OPT_SET, "user", "k1")).length + 8, bytes.length);
+        assertEquals(set.version, ((Command) CommandCodec.decode(bytes)).version);
+    }
+
+    @Test
+    public void roundTripsPayloads() {
+        Command mset = command(Command.OPT_MSET, "user", null);
+        mset.keys = Arrays.asList("k1", "", "k3");
+        assertEquals(mset.keys, ((Command) CommandCodec.decode(CommandCodec.encode(mset))).keys);
+
+        Command rem = command(Command.OPT_REM, "user", null);
+        rem.generation = Long.MAX_VALUE;
+        assertEquals(rem.generation, ((Command) CommandCodec.decode(CommandCodec.encode(rem))).generation);
+
+        Command fetch = command(Command.OPT_FETCH, "user", null);
+        fetch.fetch = "fetch-1";
+        assertEquals(fetch.fetch, ((Command) CommandCodec.decode(CommandCodec.encode(fetch))).fetch);
+    }
+
+    @Test
+    public void roundTripsBatch() {
+        CommandBatch batch = batch();
+        CommandBatch decoded = (CommandBatch) CommandCodec.decode(CommandCodec.encode(batch));
+        assertEquals(batch.node, decoded.node);
+        assertTrue(decoded.cls);
+        assertEquals(batch.rems, decoded.rems);
+        assertEquals(batch.dels, decoded.dels);
+        assertEquals(batch.sets, decoded.sets);
+    }
+
+    @Test
+    public void readsHeaderWithoutDecoding() {
+        byte[] bytes = CommandCodec.encode(command(Command.OPT_DEL, "user", "k1"));
+        assertTrue(CommandCodec.isCommand(bytes));
+        assertEquals(Command.OPT_DEL, CommandCodec.getOper(bytes));
+        assertEquals(300, CommandCodec.getNode(bytes));
+        assertFalse(CommandCodec.isCommand(new byte[] { CommandCodec.MAGIC, CommandCodec.VERSION, Command.OPT_DEL }));
+    }
+
+    @Test
+    public void ignoresUnsupportedVersion() {
+        byte[] bytes = CommandCodec.encode(command(Command.OPT_DEL, "user", "k1"));
+        bytes[1] = CommandCodec.VERSION + 1;
+        assertNull(CommandCodec.decode(bytes));
+    }
+
+    @Test
+    public void rejectsTruncatedInput() {
+        Command set = command(Command.OPT_SET, "user", "k1");
+        set.version = 42;
+        Command mset = command(Command.OPT_MSET, "user", null);
+        mset.keys = Arrays.asList("k1", "k2");
+        Command rem = command(Command.OPT_REM, "user", null);
+        rem.generation = 1000;
+        Command fetch = command(Command.OPT_FETCH, "user", null);
+        fetch.fetch = "fetch-1";
+        assertTruncated(CommandCodec.encode(set), CommandCodec.encode(set).length - 8);
+        assertTruncated(CommandCodec.encode(mset), -1);
+        assertTruncated(CommandCodec.encode(rem), -1);
+        assertTruncated(CommandCodec.encode(fetch), -1);
+        assertTruncated(CommandCodec.encode(batch()), -1);
+    }
+
+    /**
+     * 截去末尾任意字节后解码均抛出IllegalArgumentException,valid为去掉版本号后仍完整的长度
+     */
+    private static void assertTruncated(byte[] bytes, int valid) {
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            if (length < 4) {
+                assertNull(CommandCodec.decode(truncated));
+                continue;
+            }
+            if (length == valid) {
+                assertEquals(0, ((Command) CommandCodec.decode(truncated)).version);
+                continue;
+            }
+            try {
+                CommandCodec.decode(truncated);
+                fail("decoded " + length + " of " + bytes.length + " bytes: " + Arrays.toString(truncated));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Command command(byte oper, String name, String key) {
+        Command command = new Command();
+        command.oper = oper;
+        command.name = name;
+        command.key = key;
+        command.node = 300;
+        return command;
+    }
+
+    private static CommandBatch batch() {
+        CommandBatch batch = new CommandBatch(300);
+        batch.cls = true;
+        batch.rems.put("user", 7L);
+        batch.rems.put("order", 0L);
+        batch.dels.put("user", Arrays.asList("k1", "k2"));
+        batch.sets.put("order", Arrays.asList("k3"));
+        return batch;
+    }
+
+    private static void assertCommand(Command expected, Command actual) {
+        assertEquals(expected.oper, actual.oper);
+        assertEquals(expected.node, actual.node);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.key, actual.key);
+    }
+
+}
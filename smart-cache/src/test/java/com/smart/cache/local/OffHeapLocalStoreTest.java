@@ -0,0 +1,166 @@
+package com.smart.cache.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.smart.serializer.Serializer;
+import com.smart.serializer.StringSerializer;
+
+/**
+ * OffHeapLocalStoreTest
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 两个100字节分区,每个值10字节,写满一个分区需10个元素.
+ *
+ * @author YRain
+ */
+public class OffHeapLocalStoreTest {
+
+    private static final String     NAME       = "user";
+
+    private static final Serializer SERIALIZER = new StringSerializer();
+
+    @Test
+    public void retainsReadEntriesWhenRecyclingSlab() {
+        OffHeapLocalStore store = new OffHeapLocalStore(SERIALIZER, 200, 100);
+        putRange(store, 0, 10);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(valueOf(i), store.get(NAME, "k" + i).getValue());
+        }
+        putRange(store, 10, 21);
+        // 回收首个分区:读取过的k0~k2迁移保留,其余丢弃
+        for (int i = 0; i < 3; i++) {
+            assertEquals(valueOf(i), store.getQuiet(NAME, "k" + i).getValue());
+        }
+        for (int i = 3; i < 10; i++) {
+            assertNull("k" + i, store.getQuiet(NAME, "k" + i));
+        }
+        for (int i = 10; i < 21; i++) {
+            assertEquals(valueOf(i), store.getQuiet(NAME, "k" + i).getValue());
+        }
+        assertEquals(7, store.getEvictions());
+        assertEquals(200, store.getAllocatedBytes());
+        // 迁移后未再读取,下次回收时丢弃
+        putRange(store, 21, 38);
+        for (int i = 0; i < 3; i++) {
+            assertNull("k" + i, store.getQuiet(NAME, "k" + i));
+        }
+        assertEquals(200, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void retainsAtMostHalfOfSlab() {
+        OffHeapLocalStore store = new OffHeapLocalStore(SERIALIZER, 200, 100);
+        putRange(store, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            store.get(NAME, "k" + i);
+        }
+        putRange(store, 10, 21);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(valueOf(i), store.getQuiet(NAME, "k" + i).getValue());
+        }
+        for (int i = 5; i < 10; i++) {
+            assertNull("k" + i, store.getQuiet(NAME, "k" + i));
+        }
+        assertEquals(5, store.getEvictions());
+    }
+
+    @Test
+    public void skipsValuesLargerThanSlab() {
+        OffHeapLocalStore store = new OffHeapLocalStore(SERIALIZER, 200, 100);
+        store.put(NAME, new LocalEntry("big", valueOf(0), 0));
+        // 超出分区大小的值不保存,并移除旧值
+        store.put(NAME, new LocalEntry("big", repeat('x', 101), 0));
+        assertNull(store.get(NAME, "big"));
+        assertEquals(0, store.size());
+        String full = repeat('y', 100);
+        store.put(NAME, new LocalEntry("full", full, 0));
+        assertEquals(full, store.get(NAME, "full").getValue());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void keepsRawBytesUnserialized() {
+        OffHeapLocalStore store = new OffHeapLocalStore(SERIALIZER, 200, 100);
+        byte[] bytes = { 1, 2, 3 };
+        store.put(NAME, new LocalEntry("k", new LocalBytes(bytes), 0));
+        Object value = store.get(NAME, "k").getValue();
+        assertTrue(value instanceof LocalBytes);
+        assertArrayEquals(bytes, ((LocalBytes) value).getBytes());
+    }
+
+    @Test
+    public void neverReadsBytesOfRecycledSlab() throws Exception {
+        // 分区很小,写入线程不断回收读取线程正在读取的分区
+        final OffHeapLocalStore store = new OffHeapLocalStore(SERIALIZER, 128, 64);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread() {
+
+                @Override
+                public void run() {
+                    while (done.getCount() > 0 && failure.get() == null) {
+                        for (int i = 0; i < 20; i++) {
+                            LocalEntry entry = store.get(NAME, "k" + i);
+                            if (entry != null && !expectedOf(i).equals(entry.getValue())) {
+                                failure.set("k" + i + "=" + entry.getValue());
+                            }
+                        }
+                    }
+                }
+
+            };
+            readers[r].start();
+        }
+        try {
+            for (int n = 0; n < 200000 && failure.get() == null; n++) {
+                int i = n % 20;
+                store.put(NAME, new LocalEntry("k" + i, expectedOf(i), 0));
+            }
+        } finally {
+            done.countDown();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+    }
+
+    private static void putRange(OffHeapLocalStore store, int from, int to) {
+        for (int i = from; i < to; i++) {
+            store.put(NAME, new LocalEntry("k" + i, valueOf(i), 0));
+        }
+    }
+
+    /**
+     * 10字节的值
+     */
+    private static String valueOf(int i) {
+        String value = "v" + i;
+        return value + repeat('-', 10 - value.length());
+    }
+
+    /**
+     * 长度随key变化的值,读到其他元素的字节时不相等
+     */
+    private static String expectedOf(int i) {
+        return i + ":" + repeat((char) ('a' + i), i % 7 + 1);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.smart.cache.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * TinyLfuLocalStoreTest
+ * -----------------------------------------------------------------------------------------------------------------------------------
+ * 单分段(concurrencyLevel为1)下淘汰顺序确定,容量100时窗口区1,主区99,保护区79.
+ *
+ * @author YRain
+ */
+public class TinyLfuLocalStoreTest {
+
+    private static final String NAME = "user";
+
+    @Test
+    public void promotesFromWindowToProbationToProtected() {
+        TinyLfuLocalStore store = new TinyLfuLocalStore(100, 1);
+        store.put(NAME, new LocalEntry("a", "A", 0));
+        assertEquals(TinyLfuLocalStore.WINDOW, store.regionOf(NAME, "a"));
+        // 窗口区超出上限,最久未访问的a进入试用区
+        store.put(NAME, new LocalEntry("b", "B", 0));
+        assertEquals(TinyLfuLocalStore.PROBATION, store.regionOf(NAME, "a"));
+        assertEquals(TinyLfuLocalStore.WINDOW, store.regionOf(NAME, "b"));
+        // 试用区再次访问后晋升保护区
+        assertNotNull(store.get(NAME, "a"));
+        assertEquals(TinyLfuLocalStore.PROTECTED, store.regionOf(NAME, "a"));
+        // 窗口区访问不改变区域
+        assertNotNull(store.get(NAME, "b"));
+        assertEquals(TinyLfuLocalStore.WINDOW, store.regionOf(NAME, "b"));
+    }
+
+    @Test
+    public void demotesOldestProtectedWhenFull() {
+        TinyLfuLocalStore store = new TinyLfuLocalStore(100, 1);
+        for (int i = 0; i <= 80; i++) {
+            store.put(NAME, new LocalEntry("k" + i, i, 0));
+        }
+        for (int i = 0; i < 80; i++) {
+            store.get(NAME, "k" + i);
+        }
+        // 保护区上限79,最先晋升的k0降回试用区
+        assertEquals(TinyLfuLocalStore.PROBATION, store.regionOf(NAME, "k0"));
+        for (int i = 1; i < 80; i++) {
+            assertEquals(TinyLfuLocalStore.PROTECTED, store.regionOf(NAME, "k" + i));
+        }
+    }
+
+    @Test
+    public void rejectsColdCandidatesAndAdmitsHotOnes() {
+        TinyLfuLocalStore store = new TinyLfuLocalStore(100, 1);
+        for (int i = 0; i < 100; i++) {
+            store.put(NAME, new LocalEntry("k" + i, i, 0));
+        }
+        for (int n = 0; n < 2; n++) {
+            for (int i = 0; i < 99; i++) {
+                store.get(NAME, "k" + i);
+            }
+        }
+        // 仅访问一次的新元素频率低于主区淘汰者,不替换已有元素
+        for (int i = 0; i < 50; i++) {
+            store.put(NAME, new LocalEntry("n" + i, i, 0));
+        }
+        for (int i = 0; i < 99; i++) {
+            assertNotNull("k" + i, store.getQuiet(NAME, "k" + i));
+        }
+        for (int i = 0; i < 49; i++) {
+            assertNull("n" + i, store.getQuiet(NAME, "n" + i));
+        }
+        assertEquals(100, store.size());
+        // 窗口区内多次访问的元素离开窗口区时替换主区淘汰者
+        store.put(NAME, new LocalEntry("hot", "H", 0));
+        for (int i = 0; i < 4; i++) {
+            store.get(NAME, "hot");
+        }
+        store.put(NAME, new LocalEntry("push", "P", 0));
+        assertEquals(TinyLfuLocalStore.PROBATION, store.regionOf(NAME, "hot"));
+        assertEquals(100, store.size());
+    }
+
+    @Test
+    public void halvesSketchCountsAfterSampleSize() {
+        // 容量16时采样数160
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(FrequencySketch.MAX_COUNT, sketch.frequency("hot"));
+        int increments = 0;
+        while (sketch.frequency("hot") == FrequencySketch.MAX_COUNT) {
+            sketch.increment("cold" + increments++);
+            assertTrue("no reset after " + increments + " increments", increments <= 160);
+        }
+        assertEquals(FrequencySketch.MAX_COUNT >>> 1, sketch.frequency("hot"));
+    }
+
+    @Test
+    public void usesDedicatedInstanceForMaxEntries() {
+        TinyLfuLocalStore store = new TinyLfuLocalStore(1000, 1);
+        store.configure("small", new LocalConfig(0, 10));
+        for (int i = 0; i < 100; i++) {
+            store.put(NAME, new LocalEntry("k" + i, i, 0));
+        }
+        for (int i = 0; i < 50; i++) {
+            store.put("small", new LocalEntry("k" + i, i, 0));
+        }
+        // 独立实例不占用共享容量,也不淘汰共享实例中的元素
+        assertEquals(10, store.keys("small").size());
+        assertEquals(100, store.keys(NAME).size());
+        assertEquals(110, store.size());
+        assertTrue(store.names().contains("small"));
+        // 容量不变时保留已有元素
+        store.configure("small", new LocalConfig(0, 10));
+        assertEquals(10, store.keys("small").size());
+        store.clear("small");
+        assertEquals(0, store.keys("small").size());
+        assertEquals(100, store.keys(NAME).size());
+        // 取消配置后回到共享实例
+        store.put("small", new LocalEntry("x", "X", 0));
+        store.configure("small", null);
+        assertNull(store.getQuiet("small", "x"));
+        store.put("small", new LocalEntry("x", "X", 0));
+        assertNotNull(store.getQuiet("small", "x"));
+        assertEquals(101, store.size());
+    }
+
+    @Test
+    public void removesExpiredEntryOnGet() {
+        TinyLfuLocalStore store = new TinyLfuLocalStore(100, 1);
+        store.put(NAME, new LocalEntry("k", "V", 1, 0));
+        assertNull(store.get(NAME, "k"));
+        assertTrue(store.keys(NAME).isEmpty());
+    }
+
+    @Test
+    public void keepsFreshValuePutWhileGetRemovesExpired() {
+        final TinyLfuLocalStore store = new TinyLfuLocalStore(100, 1);
+        final LocalEntry fresh = new LocalEntry("k", "new", 60);
+        store.put(NAME, new LocalEntry("k", "old", 1, 0) {
+
+            private boolean raced;
+
+            @Override
+            public boolean isExpired(long now) {
+                // get判定过期之后,加锁删除之前,其他线程写入新值
+                if (!this.raced) {
+                    this.raced = true;
+                    store.put(NAME, fresh);
+                }
+                return true;
+            }
+
+        });
+        assertNull(store.get(NAME, "k"));
+        assertSame(fresh, store.getQuiet(NAME, "k"));
+    }
+
+}